@@ -7,19 +7,23 @@ import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.security.Permission;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -44,6 +48,10 @@ public class GitletTests {
     static final Path CONFLICT4 = SRC.resolve("conflict4.txt");
     static final Path CONFLICT5 = SRC.resolve("conflict5.txt");
     static final Path CONFLICT6 = SRC.resolve("conflict6.txt");
+    static final Path LINES = SRC.resolve("lines.txt");
+    static final Path LINES2 = SRC.resolve("lines2.txt");
+    static final Path LINES6 = SRC.resolve("lines6.txt");
+    static final Path LINES26 = SRC.resolve("lines26.txt");
     static final Path A = SRC.resolve("a.txt");
     static final Path B = SRC.resolve("b.txt");
     static final Path C = SRC.resolve("c.txt");
@@ -296,6 +304,20 @@ public class GitletTests {
         }
     }
 
+    /**
+     * Creates a directory, and any missing parents, in the current testing directory.
+     *
+     * @param path -- directory name to create
+     */
+    public static void makeDirectory(String path) {
+        try {
+            OG_OUT.println("Make directory " + path);
+            Files.createDirectories(Path.of(path));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Asserts that a file exists in the current testing directory.
      *
@@ -1556,4 +1578,700 @@ public class GitletTests {
         assertFileEquals(NOTF, "F.txt");
         assertFileEquals(G, "G.txt");
     }
+
+    @Test
+    public void test45_statusUnstagedAndUntracked() {
+        i_setup2();
+        writeFile(NOTWUG, "f.txt");
+        deleteFile("g.txt");
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+                f.txt (modified)
+                g.txt (deleted)
+
+                === Untracked Files ===
+                h.txt
+
+                """);
+    }
+
+    @Test
+    public void test46_verifyCleanRepository() {
+        i_setup2();
+        writeFile(NOTWUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Changed f"}, "");
+        gitletCommand(new String[]{"verify"}, "");
+    }
+
+    @Test
+    public void test47_addAllStagesChangesAndDeletions() {
+        i_setup2();
+        writeFile(NOTWUG, "f.txt");
+        deleteFile("g.txt");
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "-A"}, "");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                f.txt
+                h.txt
+
+                === Removed Files ===
+                g.txt
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test48_mergeBaseFollowsMergedInParent() {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "b"}, "");
+        writeFile(NOTWUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "M1"}, "");
+        gitletCommand(new String[]{"switch", "b"}, "");
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "B1"}, "");
+        gitletCommand(new String[]{"merge", "main"}, "");
+        assertFileEquals(NOTWUG, "f.txt");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        writeFile(WUG3, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "M2"}, "");
+        gitletCommand(new String[]{"merge", "b"}, "");
+        assertFileEquals(WUG3, "f.txt");
+        assertFileEquals(WUG2, "h.txt");
+    }
+
+    @Test
+    public void test49_logPathShowsOnlyCommitsChangingIt() {
+        i_setup2();
+        writeFile(NOTWUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Changed f"}, "");
+        gitletCommandP(new String[]{"log", "--", "g.txt"}, """
+                ===
+                ${HEADER}
+                ${DATE}
+                Two files
+
+                """
+                .replace("${HEADER}", "commit [a-f0-9]+")
+                .replace("${DATE}", DATE));
+        gitletCommandP(new String[]{"log", "--", "f.txt", "--oneline"},
+            "[a-f0-9]{7} Changed f\n[a-f0-9]{7} Two files\n");
+        gitletCommandP(new String[]{"log", "-n", "1", "--", "f.txt", "--oneline"},
+            "[a-f0-9]{7} Changed f\n");
+        gitletCommand(new String[]{"log", "--", "../f.txt"}, "Path is outside the repository.\n");
+        gitletCommand(new String[]{"log", "--oneline", "--", "sub/../../f.txt"},
+            "Path is outside the repository.\n");
+    }
+
+    @Test
+    public void test50_logLimitSkipOneline() {
+        i_setup2();
+        gitletCommandP(new String[]{"log", "-n", "1", "--oneline"}, "[a-f0-9]{7} Two files\n");
+        gitletCommandP(new String[]{"log", "--skip", "1", "--oneline"}, "[a-f0-9]{7} initial commit\n");
+        gitletCommandP(new String[]{"global-log", "-n", "1", "--oneline"}, "[a-f0-9]{7} initial commit\n");
+    }
+
+    @Test
+    public void test51_findGrep() {
+        i_setup2();
+        writeFile(NOTWUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Changed f"}, "");
+        gitletCommandP(new String[]{"find", "--grep", "f(iles)?$"}, "[a-f0-9]{40}\n[a-f0-9]{40}\n");
+        gitletCommand(new String[]{"find", "--grep", "^files"}, "Found no commit with that message.\n");
+    }
+
+    @Test
+    public void test52_diffWorkingCachedAndCommits() {
+        i_setup2();
+        writeFile(NOTWUG, "f.txt");
+        String fDiff = "diff --git a/f.txt b/f.txt\n--- a/f.txt\n+++ b/f.txt\n"
+            + "@@ -1 +1 @@\n-This is a wug.\n+This is not a wug.\n";
+        gitletCommand(new String[]{"diff"}, fDiff);
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"diff"}, "");
+        gitletCommand(new String[]{"diff", "--cached"}, fDiff);
+        gitletCommand(new String[]{"rm", "g.txt"}, "");
+        gitletCommand(new String[]{"commit", "Changed f, removed g"}, "");
+        gitletCommand(new String[]{"diff", "--cached"}, "");
+        Matcher m = gitletCommandP(new String[]{"log", "--oneline"},
+            "([a-f0-9]{7}) Changed f, removed g\n([a-f0-9]{7}) Two files\n[a-f0-9]{7} initial commit\n");
+        gitletCommand(new String[]{"diff", m.group(2), m.group(1)},
+            fDiff + "diff --git a/g.txt b/g.txt\ndeleted file\n--- a/g.txt\n+++ /dev/null\n"
+            + "@@ -1 +0,0 @@\n-This is not a wug.\n");
+    }
+
+    @Test
+    public void test53_mergeNonOverlappingLineChanges() {
+        i_prelude1();
+        writeFile(LINES, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add f"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(LINES2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change line 2"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(LINES6, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change line 6"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "");
+        assertFileEquals(LINES26, "f.txt");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+                other
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test54_mergeDryRunAndNoCommit() {
+        i_prelude1();
+        writeFile(LINES, "f.txt");
+        writeFile(WUG, "g.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"add", "g.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add f and g"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(LINES2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change line 2"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(LINES6, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"rm", "g.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change line 6, remove g"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"merge", "--no-commit", "--dry-run", "other"}, "merge f.txt\nremove g.txt\n");
+        assertFileEquals(LINES2, "f.txt");
+        assertFileEquals(WUG, "g.txt");
+        gitletCommand(new String[]{"merge", "--no-commit", "other"}, "");
+        assertFileEquals(LINES26, "f.txt");
+        assertFileDoesNotExist("g.txt");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+                other
+
+                === Staged Files ===
+                f.txt
+
+                === Removed Files ===
+                g.txt
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+        gitletCommand(new String[]{"commit", "Merged other"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "Given branch is an ancestor of the current branch.");
+    }
+
+    @Test
+    public void test55_batchRunsCommandsFromStdin() {
+        i_prelude1();
+        writeFile(WUG, "f.txt");
+        writeFile(NOTWUG, "g.txt");
+        String script = "add f.txt\ncommit \"Add f\"\n\n# g next\nadd g.txt\ncommit\n"
+            + "commit 'Add g'\nbranch other\nrm-branch nothing\nbranch\nlog --oneline\n";
+        InputStream stdin = System.in;
+        System.setIn(new ByteArrayInputStream(script.getBytes()));
+        try {
+            gitletCommandP(new String[]{"batch", "--checkpoint", "2"},
+                "Please enter a commit message.\n"
+                + "A branch with that name does not exist.\n"
+                + "Incorrect operands.\n"
+                + "[a-f0-9]{7} Add g\n[a-f0-9]{7} Add f\n[a-f0-9]{7} initial commit\n");
+        } finally {
+            System.setIn(stdin);
+        }
+        gitletCommand(new String[]{"reset"}, "Incorrect operands.\n");
+        gitletCommand(new String[]{"restore", "a", "b", "c"}, "Incorrect operands.\n");
+        gitletCommandP(new String[]{"log", "-n", "1", "--oneline"}, "[a-f0-9]{7} Add g\n");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+                other
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test56_catFileBatchStreamsObjects() {
+        i_prelude1();
+        writeFile(WUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add f"}, "");
+        Matcher log = gitletCommandP(new String[]{"log", "-n", "1", "--oneline"}, "([a-f0-9]{7}) Add f\n");
+        String zeros = "0".repeat(40);
+        Matcher commit = catFile(log.group(1) + "\n" + zeros + "\n",
+            "[a-f0-9]{40} commit [0-9]+\ntree ([a-f0-9]{40})\nparent [a-f0-9]{40}\n"
+            + "author .*\ndate .*\n\nAdd f\n" + zeros + " missing\n");
+        Matcher tree = catFile(commit.group(1) + "\n",
+            "[a-f0-9]{40} tree 52\nblob ([a-f0-9]{40}) f.txt\n\n");
+        String blob = tree.group(1);
+        catFile(blob + "\n", blob + " blob 15\nThis is a wug.\n\n");
+        String outside = "../".repeat(10) + "etc/passwd";
+        catFile(outside + "\n" + blob + "\n",
+            Pattern.quote(outside) + " missing\n" + blob + " blob 15\nThis is a wug.\n\n");
+        gitletCommand(new String[]{"gc"}, "");
+        catFile(blob + "\n" + blob + "\n",
+            blob + " blob 15\nThis is a wug.\n\n" + blob + " blob 15\nThis is a wug.\n\n");
+    }
+
+    @Test
+    public void test57_abbreviatedCommitIds() {
+        i_prelude1();
+        for (int i = 1; i <= 20; i += 1) {
+            commitVersion(i);
+        }
+        // Without a sorted index every id is found by scanning the log.
+        assertFileDoesNotExist(".gitlet/commit-index");
+        List<String> ids = commitIds();
+        gitletCommand(new String[]{"restore", ids.get(3), "--", "f.txt"}, "");
+        assertFileEquals(WUG, "f.txt");
+        // 21 commits, 16 hex digits: at least two ids start alike.
+        String shared = null;
+        for (int i = 0; i < ids.size() && shared == null; i += 1) {
+            for (int j = 0; j < i; j += 1) {
+                if (ids.get(j).charAt(0) == ids.get(i).charAt(0)) {
+                    shared = ids.get(i).substring(0, 1);
+                }
+            }
+        }
+        gitletCommand(new String[]{"restore", shared, "--", "f.txt"}, "Ambiguous commit id.");
+
+        // Past 256 unsorted ids the sorted index is rebuilt over all of them.
+        for (int i = 21; i <= 260; i += 1) {
+            commitVersion(i);
+        }
+        assertFileExists(".gitlet/commit-index");
+        ids = commitIds();
+        gitletCommand(new String[]{"restore", ids.get(3), "--", "f.txt"}, "");
+        assertFileEquals(WUG, "f.txt");
+        // The newest commits are only in the unsorted tail of the log.
+        String newest = ids.get(ids.size() - 1);
+        gitletCommand(new String[]{"restore", newest, "--", "f.txt"}, "");
+        assertFileEquals(NOTWUG, "f.txt");
+        gitletCommand(new String[]{"restore", newest.substring(0, 1), "--", "f.txt"},
+            "Ambiguous commit id.");
+    }
+
+    @Test
+    public void test58_sameSizeChangeInRacyWindow() throws IOException {
+        i_prelude1();
+        writeFile(A, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        rewriteKeepingStat(B, "f.txt");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                f.txt
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+                f.txt (modified)
+
+                === Untracked Files ===
+
+                """);
+        writeFile(A, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add f"}, "");
+        rewriteKeepingStat(C, "f.txt");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+                f.txt (modified)
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    /** Overwrites DST in place with the contents of SRC, which must have
+     *  its size, and gives it back its modification time, so that only
+     *  its contents tell the change apart. */
+    private void rewriteKeepingStat(Path src, String dst) throws IOException {
+        Path file = Path.of(dst);
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.write(file, Files.readAllBytes(src));
+        Files.setLastModifiedTime(file, modified);
+    }
+
+    @Test
+    public void test59_nestedDirectoriesAndFileDirectorySwaps() {
+        i_prelude1();
+        makeDirectory("d/e");
+        writeFile(WUG, "d/e/x.txt");
+        writeFile(NOTWUG, "d/y.txt");
+        writeFile(A, "f.txt");
+        gitletCommand(new String[]{"add", "-A"}, "");
+        gitletCommand(new String[]{"commit", "Nested"}, "");
+        i_blankStatus();
+        // The directory d/e becomes a file.
+        deleteFile("d/e/x.txt");
+        deleteFile("d/e");
+        writeFile(WUG2, "d/e");
+        gitletCommand(new String[]{"add", "-A"}, "");
+        gitletCommand(new String[]{"commit", "Directory to file"}, "");
+        i_blankStatus();
+        // And back into a directory.
+        deleteFile("d/e");
+        makeDirectory("d/e");
+        writeFile(WUG3, "d/e/z.txt");
+        gitletCommand(new String[]{"add", "-A"}, "");
+        gitletCommand(new String[]{"commit", "File to directory"}, "");
+        i_blankStatus();
+        gitletCommandP(new String[]{"log", "--oneline", "--", "d/e"},
+            "[a-f0-9]{7} File to directory\n[a-f0-9]{7} Directory to file\n[a-f0-9]{7} Nested\n");
+        gitletCommandP(new String[]{"log", "--oneline", "--", "d/y.txt"}, "[a-f0-9]{7} Nested\n");
+        gitletCommand(new String[]{"verify"}, "");
+    }
+
+    @Test
+    public void test60_stagingJournalDropsDamagedTail() throws IOException {
+        i_prelude1();
+        writeFile(WUG, "f.txt");
+        writeFile(NOTWUG, "g.txt");
+        Path journal = Path.of(".gitlet", "staging-journal");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"add", "g.txt"}, "");
+        // A record cut short by a crash.
+        byte[] records = Files.readAllBytes(journal);
+        Files.write(journal, Arrays.copyOf(records, records.length - 3));
+        checkStagedOnlyF();
+        // The torn record was cut off, so a new one is read back.
+        gitletCommand(new String[]{"add", "g.txt"}, "");
+        gitletCommandP(new String[]{"status"}, "(?s).*=== Staged Files ===\nf.txt\ng.txt\n\n.*");
+        // A record whose checksum does not match.
+        records = Files.readAllBytes(journal);
+        records[records.length - 5] ^= 1;
+        Files.write(journal, records);
+        checkStagedOnlyF();
+    }
+
+    @Test
+    public void test61_stagingJournalReplayIsIdempotent() throws IOException {
+        i_prelude1();
+        writeFile(WUG, "f.txt");
+        writeFile(NOTWUG, "g.txt");
+        Path journal = Path.of(".gitlet", "staging-journal");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"add", "g.txt"}, "");
+        gitletCommand(new String[]{"rm", "g.txt"}, "");
+        byte[] records = Files.readAllBytes(journal);
+        // Compact the journal into a new snapshot: with the snapshot gone,
+        // the next save writes one.
+        deleteFile(".gitlet/stagingArea.ser");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        assertFileExists(".gitlet/stagingArea.ser");
+        assertFileDoesNotExist(".gitlet/staging-journal");
+        // As after a crash between writing the snapshot and emptying the
+        // journal: the journal's records are replayed over a snapshot that
+        // already has them.
+        Files.write(journal, records);
+        checkStagedOnlyF();
+        gitletCommand(new String[]{"commit", "Add f"}, "");
+        gitletCommandP(new String[]{"log", "-n", "1", "--oneline"}, "[a-f0-9]{7} Add f\n");
+    }
+
+    @Test
+    public void test62_checkoutSwapsFileAndDirectory() {
+        i_prelude1();
+        makeDirectory("d/e");
+        writeFile(WUG, "d/e/x.txt");
+        writeFile(A, "f.txt");
+        gitletCommand(new String[]{"add", "-A"}, "");
+        gitletCommand(new String[]{"commit", "Directory"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        deleteFile("d/e/x.txt");
+        deleteFile("d/e");
+        writeFile(WUG2, "d/e");
+        writeFile(B, "f.txt");
+        gitletCommand(new String[]{"add", "-A"}, "");
+        gitletCommand(new String[]{"commit", "File"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        assertFileEquals(WUG, "d/e/x.txt");
+        assertFileEquals(A, "f.txt");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        assertFileEquals(WUG2, "d/e");
+        assertFileEquals(B, "f.txt");
+        List<String> ids = commitIds();
+        gitletCommand(new String[]{"reset", ids.get(1)}, "");
+        assertFileEquals(WUG, "d/e/x.txt");
+        gitletCommand(new String[]{"reset", ids.get(2)}, "");
+        assertFileEquals(WUG2, "d/e");
+        i_blankStatus2();
+    }
+
+    @Test
+    public void test63_checkoutStopsAtFilesInTheWay() {
+        i_prelude1();
+        makeDirectory("d/e");
+        writeFile(WUG, "d/e/x.txt");
+        writeFile(A, "f.txt");
+        gitletCommand(new String[]{"add", "-A"}, "");
+        gitletCommand(new String[]{"commit", "Directory"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        deleteFile("d/e/x.txt");
+        deleteFile("d/e");
+        deleteFile("d");
+        writeFile(B, "f.txt");
+        gitletCommand(new String[]{"add", "-A"}, "");
+        gitletCommand(new String[]{"commit", "No directory"}, "");
+        // An untracked file where a restored file needs a directory.
+        makeDirectory("d");
+        writeFile(WUG2, "d/e");
+        gitletCommand(new String[]{"switch", "other"},
+            "There is an untracked file in the way; delete it, or add and commit it first.\n");
+        gitletCommand(new String[]{"reset", commitIds().get(1)},
+            "There is an untracked file in the way; delete it, or add and commit it first.\n");
+        assertFileEquals(WUG2, "d/e");
+        assertFileEquals(B, "f.txt");
+        gitletCommandP(new String[]{"log", "-n", "1", "--oneline"}, "[a-f0-9]{7} No directory\n");
+        // An untracked directory where a restored file goes.
+        deleteFile("d/e");
+        deleteFile("d");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        deleteFile("d/e/x.txt");
+        deleteFile("d/e");
+        writeFile(WUG2, "d/e");
+        gitletCommand(new String[]{"add", "-A"}, "");
+        gitletCommand(new String[]{"commit", "File"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        makeDirectory("d/e");
+        writeFile(WUG3, "d/e/u.txt");
+        gitletCommand(new String[]{"switch", "other"},
+            "There is an untracked file in the way; delete it, or add and commit it first.\n");
+        assertFileEquals(WUG3, "d/e/u.txt");
+        assertFileEquals(B, "f.txt");
+        gitletCommand(new String[]{"merge", "other"},
+            "There is an untracked file in the way; delete it, or add and commit it first.\n");
+        assertFileEquals(WUG3, "d/e/u.txt");
+        assertFileEquals(B, "f.txt");
+    }
+
+    @Test
+    public void test64_daemonSeesChangesMadeBehindIt() throws Exception {
+        i_prelude1();
+        Process daemon = startDaemon();
+        try {
+            gitletCommand(new String[]{"daemon"}, "A daemon is already running.\n");
+            writeFile(WUG, "f.txt");
+            gitletCommand(new String[]{"add", "f.txt"}, "");
+            gitletCommand(new String[]{"commit", "One"}, "");
+            gitletCommandP(new String[]{"log", "-n", "1", "--oneline"}, "[a-f0-9]{7} One\n");
+            // A batch runs in this JVM rather than the daemon's, and rewrites
+            // the files the daemon has just written and holds in memory.
+            writeFile(NOTWUG, "g.txt");
+            InputStream stdin = System.in;
+            System.setIn(new ByteArrayInputStream("add g.txt\ncommit Two\n".getBytes()));
+            try {
+                gitletCommand(new String[]{"batch"}, "");
+            } finally {
+                System.setIn(stdin);
+            }
+            gitletCommandP(new String[]{"log", "-n", "1", "--oneline"}, "[a-f0-9]{7} Two\n");
+            i_blankStatus();
+            gitletCommand(new String[]{"daemon", "--stop"}, "");
+            assertTrue(daemon.waitFor(10, TimeUnit.SECONDS));
+            assertFileDoesNotExist(".gitlet/daemon.sock");
+        } finally {
+            daemon.destroyForcibly();
+            daemon.waitFor();
+        }
+    }
+
+    @Test
+    public void test65_batchUndoesFailedCommand() throws IOException {
+        i_prelude1();
+        writeFile(WUG, "f.txt");
+        writeFile(NOTWUG, "g.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add f"}, "");
+        // With the commit log in the way, a commit fails after it has
+        // cleared the staging area.
+        Path commits = Path.of(".gitlet", "commits");
+        Path saved = Path.of(".gitlet", "commits.saved");
+        Files.move(commits, saved);
+        makeDirectory(".gitlet/commits");
+        InputStream stdin = System.in;
+        System.setIn(new ByteArrayInputStream("add g.txt\ncommit 'Add g'\nstatus\n".getBytes()));
+        try {
+            gitletCommandP(new String[]{"batch"},
+                "Failed: commit 'Add g'\n"
+                + "=== Branches ===\n\\*main\n\n=== Staged Files ===\ng.txt\n\n(?s).*");
+        } finally {
+            System.setIn(stdin);
+        }
+        deleteFile(".gitlet/commits");
+        Files.move(saved, commits);
+        gitletCommandP(new String[]{"log", "-n", "1", "--oneline"}, "[a-f0-9]{7} Add f\n");
+        gitletCommandP(new String[]{"status"}, "(?s).*=== Staged Files ===\ng.txt\n\n.*");
+        gitletCommand(new String[]{"commit", "Add g"}, "");
+        gitletCommandP(new String[]{"log", "-n", "1", "--oneline"}, "[a-f0-9]{7} Add g\n");
+    }
+
+    @Test
+    public void test66_thinClientTalksToDaemon() throws Exception {
+        i_prelude1();
+        Process daemon = startDaemon();
+        try {
+            writeFile(WUG, "f.txt");
+            assertEquals("", runClient("add f.txt"));
+            // The message is built by the shell so that the client gets it
+            // as UTF-8 bytes whatever the encoding of this JVM.
+            assertEquals("", runClient("commit \"$(printf '\\303\\204nderung \\342\\234\\223 \\360\\235\\204\\236')\""));
+            Matcher head = gitletCommandP(new String[]{"log", "-n", "1", "--oneline"}, "([a-f0-9]{7}) .*\n");
+            // The message reached the daemon intact: a request encoded by
+            // gitlet itself finds it.
+            gitletCommandP(new String[]{"find", "\u00c4nderung \u2713 \ud834\udd1e"}, head.group(1) + "[a-f0-9]{33}\n");
+            assertEquals("""
+                    === Branches ===
+                    *main
+
+                    === Staged Files ===
+
+                    === Removed Files ===
+
+                    === Modifications Not Staged For Commit ===
+
+                    === Untracked Files ===
+
+                    """, runClient("status"));
+            assertEquals("", runClient("daemon --stop"));
+            assertTrue(daemon.waitFor(10, TimeUnit.SECONDS));
+            // With no daemon, the client runs the command in Java.
+            assertTrue(runClient("log -n 1 --oneline").startsWith(head.group(1) + " "));
+        } finally {
+            daemon.destroyForcibly();
+            daemon.waitFor();
+        }
+    }
+
+    /** Starts a daemon for the repository in the working directory, in a
+     *  JVM of its own, and waits for it to listen. */
+    private Process startDaemon() throws IOException, InterruptedException {
+        Process daemon = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), "gitlet.Main", "daemon")
+            .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        Path socket = Path.of(".gitlet", "daemon.sock");
+        for (int i = 0; i < 100 && !Files.exists(socket); i += 1) {
+            Thread.sleep(100);
+        }
+        return daemon;
+    }
+
+    /** Runs bin/gitlet with the shell words WORDS in a UTF-8 locale, with
+     *  the classes of this JVM to fall back on, and returns its output. */
+    private String runClient(String words) throws IOException, InterruptedException {
+        ProcessBuilder client = new ProcessBuilder("sh", "-c",
+                Path.of("..", "bin", "gitlet").toAbsolutePath() + " " + words)
+            .redirectErrorStream(true);
+        client.environment().put("LC_ALL", "C.UTF-8");
+        client.environment().put("GITLET_CLASSPATH", System.getProperty("java.class.path"));
+        Process process = client.start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+        return output;
+    }
+
+    /** Checks that the status shows f.txt staged and g.txt untracked. */
+    private void checkStagedOnlyF() {
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                f.txt
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+                g.txt
+
+                """);
+    }
+
+    /** Commits f.txt with the contents of wug.txt for odd I and of notwug.txt
+     *  for even I. */
+    private void commitVersion(int i) {
+        writeFile(i % 2 == 1 ? WUG : NOTWUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Version " + i}, "");
+    }
+
+    /** Returns the abbreviated ids of all commits, oldest first. */
+    private List<String> commitIds() {
+        runGitletCommand(new String[]{"global-log", "--oneline"});
+        List<String> ids = new ArrayList<>();
+        for (String line : getOutput().split("\n")) {
+            ids.add(line.substring(0, 7));
+        }
+        return ids;
+    }
+
+    /** Runs cat-file --batch with INPUT on standard input and returns the
+     *  match of its output against the regular expression EXPECTED. */
+    private Matcher catFile(String input, String expected) {
+        InputStream stdin = System.in;
+        System.setIn(new ByteArrayInputStream(input.getBytes()));
+        try {
+            return gitletCommandP(new String[]{"cat-file", "--batch"}, expected);
+        } finally {
+            System.setIn(stdin);
+        }
+    }
 }
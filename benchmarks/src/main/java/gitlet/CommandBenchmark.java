@@ -0,0 +1,94 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The time gitlet commands take on a SyntheticRepository. Each command
+ *  runs as it would from the command line, reading and writing .gitlet, so
+ *  what it prints is all that is left out. Work a command needs done
+ *  first, such as changing the file to add, is done outside the timing.
+ *
+ *  @author Rong
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CommandBenchmark {
+
+    /** A file changed in the working directory and not yet staged. */
+    @State(Scope.Thread)
+    public static class ChangedFile {
+        String path;
+
+        @Setup(Level.Invocation)
+        public void change(SyntheticRepository repo) throws IOException {
+            repo.write(0);
+            path = repo.path(0);
+        }
+    }
+
+    /** A file changed and staged. Each commit made with it adds to the
+     *  history, by one commit per invocation. */
+    @State(Scope.Thread)
+    public static class StagedFile {
+        @Setup(Level.Invocation)
+        public void change(SyntheticRepository repo) throws IOException {
+            repo.change(0);
+        }
+    }
+
+    /** Main reset to where "other" split from it, ready to merge again. */
+    @State(Scope.Thread)
+    public static class Unmerged {
+        @Setup(Level.Invocation)
+        public void reset(SyntheticRepository repo) {
+            Main.reset(repo.mainHead());
+        }
+    }
+
+    /** The branch to switch to next. */
+    @State(Scope.Thread)
+    public static class Branches {
+        boolean onMain = true;
+    }
+
+    @Benchmark
+    public void add(SyntheticRepository repo, ChangedFile file) {
+        Main.add(file.path);
+    }
+
+    @Benchmark
+    public void commit(SyntheticRepository repo, StagedFile file) {
+        Main.commit("Change " + repo.path(0));
+    }
+
+    @Benchmark
+    public void log(SyntheticRepository repo) {
+        Main.log(Main.LogOptions.parse(new String[] {"log"}));
+    }
+
+    @Benchmark
+    public void switchBranch(SyntheticRepository repo, Branches branches) {
+        Main.switchBranch(branches.onMain ? "other" : "main");
+        branches.onMain = !branches.onMain;
+    }
+
+    @Benchmark
+    public void merge(SyntheticRepository repo, Unmerged unmerged) {
+        Main.merge("other");
+    }
+}
@@ -0,0 +1,108 @@
+package gitlet;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The time taken by the pieces every command is built from: finding a
+ *  commit by abbreviated id, hashing contents, and serializing and reading
+ *  back the branch structure and a commit.
+ *
+ *  @author Rong
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ObjectBenchmark {
+
+    /** File contents to hash, made without a repository. */
+    @State(Scope.Thread)
+    public static class Contents {
+        /** Bytes to hash. */
+        @Param({"1024", "65536", "1048576"})
+        public int size;
+
+        byte[] bytes;
+
+        @Setup(Level.Trial)
+        public void create() {
+            bytes = new byte[size];
+            for (int i = 0; i < size; i += 1) {
+                bytes[i] = (byte) ('a' + i % 26);
+            }
+        }
+    }
+
+    /** Objects of a SyntheticRepository, loaded once. */
+    @State(Scope.Thread)
+    public static class Loaded {
+        /** Eight-digit abbreviations of every commit id, looked up in turn. */
+        String[] prefixes;
+        int next;
+
+        CommitTree commitTree;
+        Commit head;
+        File headFile;
+
+        @Setup(Level.Trial)
+        public void load(SyntheticRepository repo) {
+            List<String> ids = repo.commitIds();
+            prefixes = new String[ids.size()];
+            for (int i = 0; i < prefixes.length; i += 1) {
+                prefixes[i] = ids.get(i).substring(0, 8);
+            }
+            commitTree = CommitTree.load();
+            head = commitTree.getMain();
+            headFile = Utils.join(Repository.COMMIT_DIR, head.getId());
+        }
+    }
+
+    /** Finds a commit by abbreviated id as a command does: with a CommitTree
+     *  just loaded, so the commit is read from disk. */
+    @Benchmark
+    public Commit findCommit(Loaded loaded) {
+        String prefix = loaded.prefixes[loaded.next];
+        loaded.next = (loaded.next + 1) % loaded.prefixes.length;
+        return CommitTree.load().findCommit(prefix);
+    }
+
+    @Benchmark
+    public String sha1(Contents contents) {
+        return Utils.sha1(contents.bytes);
+    }
+
+    @Benchmark
+    public byte[] serializeCommitTree(Loaded loaded) {
+        return Utils.serialize(loaded.commitTree);
+    }
+
+    @Benchmark
+    public CommitTree readObjectCommitTree(Loaded loaded) {
+        return Utils.readObject(Repository.COMMIT_TREE, CommitTree.class);
+    }
+
+    @Benchmark
+    public byte[] serializeCommit(Loaded loaded) {
+        return Utils.serialize(loaded.head);
+    }
+
+    @Benchmark
+    public Commit readObjectCommit(Loaded loaded) {
+        return Utils.readObject(loaded.headFile, Commit.class);
+    }
+}
@@ -0,0 +1,150 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** A repository made up for a benchmark, in a new temporary directory.
+ *  It has FILES files of FILESIZE bytes of text, a hundred to a directory,
+ *  and a history of DEPTH commits after the first, each changing one file.
+ *  Branch "other" then splits off and changes the last file while main
+ *  changes the first, so that "other" merges into main without conflicts
+ *  and switching between them rewrites two files.
+ *
+ *  Repository.CWD is fixed when gitlet is first used, so the working
+ *  directory is pointed at the repository before that, and each JVM can
+ *  only hold one repository: the benchmarks must run forked, as they do
+ *  by default.
+ *
+ *  @author Rong
+ */
+@State(Scope.Benchmark)
+public class SyntheticRepository {
+
+    /** Files in each directory. */
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    /** Commits made after the initial one. */
+    @Param({"10", "1000"})
+    public int depth;
+
+    /** Files in each snapshot. */
+    @Param({"10", "1000"})
+    public int files;
+
+    /** Bytes in each file. */
+    @Param({"1024", "65536"})
+    public int fileSize;
+
+    /** The directory holding the repository. */
+    private Path root;
+
+    /** System.out while the benchmark runs, which commands print to. */
+    private PrintStream stdout;
+
+    /** The head of main once the repository is made. */
+    private String mainHead;
+
+    /** The ids of every commit, oldest first. */
+    private List<String> commitIds;
+
+    /** The number of file versions written so far. */
+    private int versions;
+
+    @Setup(Level.Trial)
+    public void create() throws IOException {
+        root = Files.createTempDirectory("gitlet-bench");
+        System.setProperty("user.dir", root.toString());
+        if (!Repository.CWD.equals(root.toFile())) {
+            throw new IllegalStateException("gitlet was used before the repository was made; "
+                                            + "run the benchmarks forked");
+        }
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        Main.init();
+        for (int i = 0; i < files; i += 1) {
+            write(i);
+        }
+        Main.add("-A");
+        Main.commit("Add " + files + " files");
+        for (int i = 0; i < depth; i += 1) {
+            change(i % files);
+            Main.commit("Change " + path(i % files));
+        }
+        Main.branch("other");
+        Main.switchBranch("other");
+        change(files - 1);
+        Main.commit("Change " + path(files - 1) + " on other");
+        Main.switchBranch("main");
+        change(0);
+        Main.commit("Change " + path(0) + " on main");
+        mainHead = CommitTree.load().getMain().getId();
+        commitIds = new ArrayList<>(CommitIndex.ids());
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        System.setOut(stdout);
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /** Returns the path of file number FILE, relative to the repository. */
+    String path(int file) {
+        return String.format("d%03d/f%05d.txt", file / FILES_PER_DIRECTORY, file);
+    }
+
+    /** Writes a new version of file number FILE. */
+    void write(int file) throws IOException {
+        Path path = root.resolve(path(file));
+        Files.createDirectories(path.getParent());
+        Files.write(path, content(file, versions));
+        versions += 1;
+    }
+
+    /** Writes a new version of file number FILE and stages it. */
+    void change(int file) throws IOException {
+        write(file);
+        Main.add(path(file));
+    }
+
+    /** Returns FILESIZE bytes of lines that differ for each FILE and
+     *  VERSION. */
+    byte[] content(int file, int version) {
+        StringBuilder text = new StringBuilder(fileSize + 64);
+        for (int line = 0; text.length() < fileSize; line += 1) {
+            text.append("file ").append(file).append(" version ").append(version)
+                .append(" line ").append(line).append('\n');
+        }
+        text.setLength(fileSize);
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the head of main as it was made. */
+    String mainHead() {
+        return mainHead;
+    }
+
+    /** Returns the ids of the commits made, oldest first. */
+    List<String> commitIds() {
+        return commitIds;
+    }
+}
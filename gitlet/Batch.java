@@ -0,0 +1,150 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Runs many commands, read one per line from standard input, in one JVM.
+ *  Each line is split into words as a shell would, honoring single and
+ *  double quotes and backslashes; blank lines and lines starting with '#'
+ *  are skipped. Commands run against one Session that defers writes, so the
+ *  branch structure, the staging area and the working index are only
+ *  written at checkpoints: every so many commands, and at the end of the
+ *  input. Commits, trees and blobs are written as they are made. A command
+ *  that fails reports its error and has its changes to the branch
+ *  structure, the staging area and the working index undone, and the batch
+ *  goes on with the next one.
+ *
+ *  @author Rong
+ */
+class Batch {
+
+    /** Commands run between checkpoints unless --checkpoint says
+     *  otherwise. */
+    private static final int DEFAULT_CHECKPOINT = 1000;
+
+    /** Runs the commands on standard input, as OPERANDS ask. */
+    static void run(String[] operands) {
+        int checkpoint = DEFAULT_CHECKPOINT;
+        if (operands.length == 2 && operands[0].equals("--checkpoint")) {
+            try {
+                checkpoint = Integer.parseInt(operands[1]);
+            } catch (NumberFormatException excp) {
+                checkpoint = 0;
+            }
+            if (checkpoint <= 0) {
+                throw Utils.error("Incorrect operands.");
+            }
+        } else if (operands.length != 0) {
+            throw Utils.error("Incorrect operands.");
+        }
+        Session session = new Session(true);
+        int every = checkpoint;
+        Session.run(session, () -> runAll(session, every));
+    }
+
+    /** Runs every command on standard input against SESSION, flushing it
+     *  after every CHECKPOINT commands. */
+    private static void runAll(Session session, int checkpoint) {
+        PrintStream stdout = System.out;
+        PrintStream out = new PrintStream(new BufferedOutputStream(stdout), false);
+        System.setOut(out);
+        int run = 0;
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                List<String> args;
+                try {
+                    args = split(line);
+                } catch (GitletException excp) {
+                    System.out.println(excp.getMessage());
+                    continue;
+                }
+                if (args.isEmpty() || args.get(0).startsWith("#")) {
+                    continue;
+                }
+                if (args.get(0).equals("batch") || args.get(0).equals("daemon")
+                    || args.get(0).equals("cat-file")) {
+                    System.out.println("Cannot run " + args.get(0) + " in a batch.");
+                    continue;
+                }
+                session.begin();
+                try {
+                    Main.run(args.toArray(new String[0]));
+                } catch (GitletException excp) {
+                    session.rollback();
+                    System.out.println(excp.getMessage());
+                } catch (RuntimeException excp) {
+                    // Only this command is undone: what earlier ones held
+                    // back still refers to the commits they wrote. The
+                    // details go to standard error, as they would outside
+                    // a batch.
+                    session.rollback();
+                    System.out.println("Failed: " + line);
+                    excp.printStackTrace();
+                }
+                run += 1;
+                if (run % checkpoint == 0) {
+                    session.flush();
+                    out.flush();
+                }
+            }
+            session.flush();
+        } catch (IOException excp) {
+            session.flush();
+            throw new IllegalArgumentException(excp);
+        } finally {
+            System.setOut(stdout);
+            out.flush();
+        }
+    }
+
+    /** Returns the words of LINE, split at unquoted white space. */
+    private static List<String> split(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '\\' && i + 1 < line.length()) {
+                word = word == null ? new StringBuilder() : word;
+                i += 1;
+                word.append(line.charAt(i));
+            } else if (quote == '"') {
+                if (c == '"') {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                word = word == null ? new StringBuilder() : word;
+                quote = c;
+            } else if (Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+            } else {
+                word = word == null ? new StringBuilder() : word;
+                word.append(c);
+            }
+        }
+        if (quote != 0) {
+            throw Utils.error("Unterminated quote.");
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+}
@@ -1,11 +1,26 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.List;
 
+/** A version of a file's contents, addressed by the SHA-1 hash of those
+ *  contents. Each distinct version is written once, as raw bytes, to
+ *  .gitlet/blob/<id>, and may later be moved into a pack by gc; a Blob
+ *  object itself only carries the id, so commits and the staging area never
+ *  serialize file contents.
+ *
+ *  @author Rong
+ */
 public class Blob implements Serializable {
-    private byte[] content;
+    private static final long serialVersionUID = 6863589044246576564L;
+
+    /** The contents of this blob, read from the blob store on first use. */
+    private transient byte[] content;
 
     private String id;
 
@@ -13,17 +28,62 @@ public class Blob implements Serializable {
 
 
     public Blob(byte[] content) {
+        this(content, Hasher.forThread());
+    }
+
+    /** A blob holding CONTENT, hashed with HASHER, and saved. */
+    Blob(byte[] content, Hasher hasher) {
         this.content = content;
-        this.id = Utils.sha1(content);
+        this.id = hasher.hash(content);
         this.save();
     }
 
+    private Blob(String id) {
+        this.id = id;
+    }
+
+    /** Returns the already stored blob ID, named FILENAME. */
+    static Blob stored(String id, String fileName) {
+        Blob blob = new Blob(id);
+        blob.fileName = fileName;
+        return blob;
+    }
+
+    /** Returns the blob for the current contents of FILE, whose SHA-1 hash
+     *  is ID. FILE is streamed into the blob store, through HASHER, only if
+     *  no blob with that id has been stored yet. */
+    public static Blob fromFile(File file, String id, Hasher hasher) {
+        return fromFile(file, id, hasher, null);
+    }
+
+    /** As fromFile(FILE, ID, HASHER), looking for the blob in PACKS, or in
+     *  ObjectStore.packs() if PACKS is null. */
+    static Blob fromFile(File file, String id, Hasher hasher, List<Pack> packs) {
+        Blob blob = new Blob(id);
+        if (!ObjectStore.contains(id, ObjectStore.BLOB, packs)) {
+            blob.id = blob.copyFrom(file, hasher);
+        }
+        return blob;
+    }
+
     public byte[] getContent() {
+        return getContent(null);
+    }
+
+    /** As getContent(), looking for the blob in PACKS, or in
+     *  ObjectStore.packs() if PACKS is null. */
+    byte[] getContent(List<Pack> packs) {
+        if (content == null) {
+            content = ObjectStore.read(id, ObjectStore.BLOB, packs);
+            if (content == null) {
+                throw Utils.error("Missing blob %s.", id);
+            }
+        }
         return content;
     }
 
     public boolean isEqualContent(byte[] otherContent) {
-        return Arrays.equals(content, otherContent);
+        return Arrays.equals(getContent(), otherContent);
     }
 
     public String getId() {
@@ -38,12 +98,52 @@ public class Blob implements Serializable {
         return fileName;
     }
 
+    private File getFile() {
+        return Utils.join(Repository.BLOB_DIR, id);
+    }
+
     public void save() {
-        File commitDir = new File(".gitlet/blob");
-        if (!commitDir.exists()) {
-            commitDir.mkdir();
+        File fileOut = getFile();
+        if (ObjectStore.contains(id, ObjectStore.BLOB)) {
+            return;
+        }
+        if (!Repository.BLOB_DIR.exists()) {
+            Repository.BLOB_DIR.mkdir();
+        }
+        File temp = Utils.join(Repository.BLOB_DIR, id + ".tmp");
+        Utils.writeContents(temp, (Object) content);
+        moveInto(temp, fileOut);
+    }
+
+    /** Streams SOURCE into the blob store and returns the hash of what was
+     *  actually copied, which differs from this blob's id only if SOURCE
+     *  changed after it was hashed. */
+    private String copyFrom(File source, Hasher hasher) {
+        if (!Repository.BLOB_DIR.exists()) {
+            Repository.BLOB_DIR.mkdir();
+        }
+        File temp = Utils.join(Repository.BLOB_DIR, id + ".tmp");
+        try {
+            String copiedId = hasher.copy(source, temp);
+            moveInto(temp, Utils.join(Repository.BLOB_DIR, copiedId));
+            return copiedId;
+        } catch (IllegalArgumentException excp) {
+            temp.delete();
+            throw excp;
+        }
+    }
+
+    /** Atomically renames TEMP to TARGET, dropping TEMP if another copy of
+     *  the same blob got there first. */
+    private static void moveInto(File temp, File target) {
+        try {
+            if (target.exists()) {
+                Files.delete(temp.toPath());
+            } else {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
         }
-        File fileOut = new File(".gitlet/blob/" + this.getId());
-        Utils.writeObject(fileOut, this);
     }
 }
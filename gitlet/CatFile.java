@@ -0,0 +1,160 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/** Prints stored objects for other programs to read, as "cat-file --batch"
+ *  asks. Object ids are read one per line from standard input, and each
+ *  object is printed as a header "<id> <type> <size>", a newline, its
+ *  contents and another newline, or as "<id> missing" if there is no such
+ *  object. Commits are printed as the canonical encoding their ids are the
+ *  hash of, trees as their listings and blobs as their raw contents.
+ *  Abbreviated ids are resolved against the commit index.
+ *
+ *  Loose trees and blobs are copied from their files to the output channel
+ *  without being read into memory first. Output is flushed whenever no
+ *  more input is waiting, so a program can write one id and read its answer.
+ *
+ *  @author Rong
+ */
+class CatFile {
+
+    /** Size of the output buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Prints the objects named on standard input, as OPERANDS ask. */
+    static void run(String[] operands) {
+        if (operands.length != 1 || !operands[0].equals("--batch")) {
+            throw Utils.error("Incorrect operands.");
+        }
+        BufferedOutputStream out = new BufferedOutputStream(System.out, BUFFER_SIZE);
+        WritableByteChannel channel = Channels.newChannel(out);
+        try {
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String id = line.trim();
+                if (!id.isEmpty()) {
+                    print(id, out, channel);
+                }
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Prints the object named ID to OUT, copying loose files through
+     *  CHANNEL, which writes to OUT. An object that cannot be read is
+     *  reported missing, and nothing else of it is printed. */
+    private static void print(String id, BufferedOutputStream out, WritableByteChannel channel)
+        throws IOException {
+        String fullId;
+        try {
+            fullId = resolve(id);
+        } catch (GitletException excp) {
+            write(out, id + " ambiguous\n");
+            return;
+        }
+        byte type = fullId == null ? 0 : ObjectStore.typeOf(fullId);
+        if (type == ObjectStore.TREE || type == ObjectStore.BLOB) {
+            FileChannel file = openLoose(fullId, type);
+            if (file != null) {
+                try (file) {
+                    copy(fullId, type, file, out, channel);
+                }
+                out.write('\n');
+                return;
+            }
+        }
+        byte[] content = type == 0 ? null : contents(fullId, type);
+        if (content == null) {
+            write(out, id + " missing\n");
+            return;
+        }
+        write(out, header(fullId, type, content.length));
+        out.write(content);
+        out.write('\n');
+    }
+
+    /** Returns the full id of the object ID names, or null if it names
+     *  none. Only a full id or an abbreviated commit id names an object. */
+    private static String resolve(String id) {
+        id = id.toLowerCase();
+        return isFullId(id) ? id : CommitIndex.resolve(id);
+    }
+
+    /** Returns true iff ID is a full id: forty lowercase hex digits. */
+    private static boolean isFullId(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i += 1) {
+            char c = id.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the contents of the object ID of type TYPE, as they are
+     *  printed, or null if it cannot be read. */
+    private static byte[] contents(String id, byte type) {
+        try {
+            if (type != ObjectStore.COMMIT) {
+                return ObjectStore.read(id, type);
+            }
+            Commit commit = Commit.load(id);
+            return commit == null ? null : commit.canonical().getBytes(StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException | GitletException excp) {
+            return null;
+        }
+    }
+
+    /** Returns the open file of the loose object ID of type TYPE, or null
+     *  if it is packed or cannot be opened. */
+    private static FileChannel openLoose(String id, byte type) {
+        try {
+            return FileChannel.open(ObjectStore.looseFile(id, type).toPath(), StandardOpenOption.READ);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Prints the header and contents of the object ID of type TYPE, whose
+     *  loose FILE is open, to OUT through CHANNEL. */
+    private static void copy(String id, byte type, FileChannel file, BufferedOutputStream out,
+                             WritableByteChannel channel) throws IOException {
+        long size = file.size();
+        write(out, header(id, type, size));
+        long position = 0;
+        while (position < size) {
+            long copied = file.transferTo(position, size - position, channel);
+            if (copied <= 0) {
+                throw new IllegalArgumentException("Object " + id + " is shorter than its size.");
+            }
+            position += copied;
+        }
+    }
+
+    /** Returns the header of the object ID of type TYPE and SIZE bytes. */
+    private static String header(String id, byte type, long size) {
+        String name = type == ObjectStore.COMMIT ? "commit" : type == ObjectStore.TREE ? "tree" : "blob";
+        return id + " " + name + " " + size + "\n";
+    }
+
+    private static void write(BufferedOutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
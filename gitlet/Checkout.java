@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Brings the working directory from one commit's snapshot to another's.
+ *  The work is planned as a map from each path to write to its blob id, or
+ *  to null for a path to delete, so that only files that differ are
+ *  touched; the plan is then carried out on a bounded pool of threads,
+ *  deletions first.
+ *
+ *  @author Rong
+ */
+class Checkout {
+
+    /** The most threads used to write and delete files. */
+    private static final int MAX_WORKERS = 8;
+
+    /** Returns the changes that turn a working directory holding the
+     *  snapshot of FROM into one holding the snapshot of TO: the files
+     *  whose blobs differ between the two trees, found without entering
+     *  identical subtrees, plus any file of TO that INDEX has an entry for
+     *  and that is missing or has been modified in the working directory.
+     *  Only the trees along those indexed paths are read, and files INDEX
+     *  does not know of are not looked at. Throws a GitletException if a
+     *  file FROM does not track would be overwritten or is in the way. */
+    static Map<String, String> plan(Commit from, Commit to, WorkingIndex index) {
+        Map<String, String> changes = Tree.diff(from.getTreeId(), to.getTreeId());
+        Map<String, String> previous = Tree.diff(to.getTreeId(), from.getTreeId());
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            File file = new File(Repository.CWD, path);
+            if (change.getValue() != null && previous.get(path) == null && file.isFile()
+                && !change.getValue().equals(index.hash(path, file))) {
+                throw Utils.error("There is an untracked file in the way; delete it, or add and commit it first.");
+            }
+        }
+        List<String> unchanged = new ArrayList<>();
+        for (String path : index.paths()) {
+            if (!changes.containsKey(path)) {
+                unchanged.add(path);
+            }
+        }
+        Map<String, String> stale = new TreeMap<>();
+        Tree.blobIds(to.getTreeId(), unchanged).entrySet().parallelStream()
+            .filter(entry -> {
+                File file = new File(Repository.CWD, entry.getKey());
+                return !file.isFile() || !entry.getValue().equals(index.hash(entry.getKey(), file));
+            })
+            .forEachOrdered(entry -> {
+                synchronized (stale) {
+                    stale.put(entry.getKey(), entry.getValue());
+                }
+            });
+        changes.putAll(stale);
+        List<String> written = new ArrayList<>();
+        Set<String> deleted = new HashSet<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                deleted.add(change.getKey());
+            } else {
+                written.add(change.getKey());
+            }
+        }
+        checkInTheWay(written, deleted);
+        return changes;
+    }
+
+    /** Throws a GitletException if writing the files at WRITTEN, once the
+     *  files at DELETED are gone, would need to replace something else in
+     *  the working directory: a file where one of them needs a directory,
+     *  or a directory holding other files where one of them goes. */
+    static void checkInTheWay(Collection<String> written, Set<String> deleted) {
+        Set<String> clear = new HashSet<>();
+        for (String path : written) {
+            for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+                String dir = path.substring(0, slash);
+                if (clear.add(dir) && new File(Repository.CWD, dir).isFile() && !deleted.contains(dir)) {
+                    throw Utils.error("There is an untracked file in the way; delete it, or add and commit it first.");
+                }
+            }
+            if (new File(Repository.CWD, path).isDirectory()) {
+                for (String inside : WorkTree.files(path)) {
+                    if (!deleted.contains(inside)) {
+                        throw Utils.error("There is an untracked file in the way; delete it, or add and commit it first.");
+                    }
+                }
+            }
+        }
+    }
+
+    /** Carries out CHANGES, a map from paths to the ids of the blobs to
+     *  write there or to null for paths to delete, and records the result
+     *  in INDEX. Directories left empty by deletions are removed before
+     *  anything is written, so a file can take the place of one. */
+    static void apply(Map<String, String> changes, WorkingIndex index) {
+        List<String> deletions = new ArrayList<>();
+        List<String> writes = new ArrayList<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            (change.getValue() == null ? deletions : writes).add(change.getKey());
+        }
+        // The pool threads have no session, so they share the packs of this one.
+        List<Pack> packs = ObjectStore.packs();
+        int workers = Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            run(pool, deletions, path -> {
+                new File(Repository.CWD, path).delete();
+                index.remove(path);
+            });
+            for (String path : deletions) {
+                File dir = new File(Repository.CWD, path).getParentFile();
+                while (!dir.equals(Repository.CWD) && dir.delete()) {
+                    dir = dir.getParentFile();
+                }
+            }
+            run(pool, writes, path -> {
+                File file = new File(Repository.CWD, path);
+                file.getParentFile().mkdirs();
+                Utils.writeContents(file, (Object) Blob.stored(changes.get(path), path).getContent(packs));
+                index.record(path, file, changes.get(path));
+            });
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** An operation on one path of the working directory. */
+    private interface FileTask {
+        void run(String path);
+    }
+
+    /** Runs TASK on each of PATHS on POOL, and waits for all of them. */
+    private static void run(ExecutorService pool, List<String> paths, FileTask task) {
+        List<Future<?>> results = new ArrayList<>();
+        for (String path : paths) {
+            results.add(pool.submit(() -> task.run(path)));
+        }
+        try {
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp);
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getCause());
+        }
+    }
+}
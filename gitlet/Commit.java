@@ -6,11 +6,16 @@ import java.util.*;
 import java.text.SimpleDateFormat;
 
 /** Represents a gitlet commit object.
- *  does at a high level.
+ *  A commit only refers to its parents by id, so it can be loaded from
+ *  .gitlet/commit on its own without pulling in the rest of the history.
+ *  Its id is the SHA-1 hash of a canonical encoding of its contents, so it
+ *  can be recomputed to check that a stored commit is intact.
  *
  *  @author Rong
  */
 public class Commit implements Serializable {
+    private static final long serialVersionUID = 1131316683157264884L;
+
     /**
      *
      * List all instance variables of the Commit class here with a useful
@@ -28,41 +33,45 @@ public class Commit implements Serializable {
 
     private String id;
 
-    private String branchName;
+    /** The id of the first parent of this Commit, or null for the initial commit. */
+    private String parent;
+
+    /** The id of the merged-in parent of this Commit, or null if it is not a merge. */
+    private String parent2;
 
-    private Commit parent;
+    /** The id of the root tree of this Commit's snapshot. Until the commit
+     *  is sealed, the tree it was started from. */
+    private String tree;
 
-    private Commit parent2;
+    /** The files of this Commit by path, read from its trees on first use. */
+    private transient Map<String, Blob> blobs;
 
-    private HashMap<String, Commit> children;
+    /** Files added (path to blob id) or removed (path to null) since this
+     *  Commit was started, written into its tree when it is sealed. */
+    private transient Map<String, String> changes;
 
-    private CommitTree currTree;
+    public Commit(String message, String parent) {
+        this(message, parent, null);
+    }
 
-    private HashMap<String, Blob> Blobs;
+    /** A commit with message MESSAGE whose snapshot starts out as that of
+     *  PARENT, which is changed only by later calls to addBlob and
+     *  removeBlob. */
+    public Commit(String message, Commit parent) {
+        this(message, parent.getId(), parent.getTreeId());
+    }
 
-    public Commit(String message, Commit parent, String branchName) {
+    private Commit(String message, String parent, String tree) {
         this.message = message;
         this.parent = parent;
-        this.children = new HashMap<>();
-        this.branchName = branchName;
+        this.tree = tree;
         this.author = System.getProperty("user.name");
-        this.id = Setid();
-        this.Blobs = new HashMap<>();
+        this.changes = new TreeMap<>();
         if (!Main.isInitialized()) {
             this.timeStamp = "00:00:00 UTC, Thursday, 1 January 1970";
         } else {
             this.timeStamp = Time();
         }
-        if (parent != null) {
-            this.setTree(parent.getTree());
-            parent.addChild(this);
-            parent.save();
-        } else {
-            CommitTree tree = new CommitTree(this);
-            this.currTree = tree;
-        }
-        this.save();
-        this.currTree.addCommit(this.id, this);
     }
 
     private String Time() {
@@ -72,33 +81,77 @@ public class Commit implements Serializable {
         return formattedDate;
     }
 
-    private String Setid() {
-        double vals = Math.random();
-        return Utils.sha1(Double.toString(vals));
+    /** Writes the trees this commit changes and gives it its id, hashing
+     *  both with HASHER. Called once the commit is complete, just before it
+     *  is stored. */
+    void seal(Hasher hasher) {
+        this.tree = Tree.write(tree, changes == null ? Collections.emptyMap() : changes, hasher);
+        this.changes = null;
+        this.id = computeId(hasher);
     }
 
-    public CommitTree getTree() {
-        return currTree;
+    /** Returns the SHA-1 hash of the snapshot, parents, author, timestamp
+     *  and message of this commit, computed with HASHER. */
+    String computeId(Hasher hasher) {
+        return hasher.hash(canonical());
     }
-    public void setTree(CommitTree currTree) {
-        this.currTree = currTree;
+
+    /** Returns the canonical encoding of this commit that its id is the
+     *  hash of. */
+    String canonical() {
+        StringBuilder canonical = new StringBuilder();
+        canonical.append("tree ").append(tree).append('\n');
+        if (parent != null) {
+            canonical.append("parent ").append(parent).append('\n');
+        }
+        if (parent2 != null) {
+            canonical.append("parent ").append(parent2).append('\n');
+        }
+        canonical.append("author ").append(author == null ? "" : author).append('\n');
+        canonical.append("date ").append(getTimestamp()).append('\n');
+        canonical.append('\n').append(message);
+        return canonical.toString();
     }
 
-    public Map<String, Blob> getBlobs() {
-        return Blobs;
+    /** Returns the id of the root tree of this commit. */
+    public String getTreeId() {
+        return tree;
     }
 
-    public void setBlobs(HashMap<String, Blob> blobs) {
-        this.Blobs = blobs;
+    public Map<String, Blob> getBlobs() {
+        if (blobs == null) {
+            blobs = Tree.flatten(tree);
+            if (changes != null) {
+                for (Map.Entry<String, String> change : changes.entrySet()) {
+                    if (change.getValue() == null) {
+                        blobs.remove(change.getKey());
+                    } else {
+                        blobs.put(change.getKey(), Blob.stored(change.getValue(), change.getKey()));
+                    }
+                }
+            }
+        }
+        return blobs;
     }
 
     public Blob getBlob(String fileName) {
-        return Blobs.getOrDefault(fileName, null);
+        return getBlobs().getOrDefault(fileName, null);
     }
 
     public void addBlob(String fileName, Blob copyFile) {
-        Blobs.put(fileName, copyFile);
         copyFile.setName(fileName);
+        changes.put(fileName, copyFile.getId());
+        if (blobs != null) {
+            blobs.put(fileName, copyFile);
+        }
+    }
+
+    /** Removes FILENAME from the snapshot of this unsealed commit. */
+    public void removeBlob(String fileName) {
+        changes.put(fileName, null);
+        if (blobs != null) {
+            blobs.remove(fileName);
+        }
     }
 
     public String getMessage() {
@@ -109,52 +162,55 @@ public class Commit implements Serializable {
         return timeStamp.toString();
     }
 
+    /** Returns the time of this commit in seconds since the epoch. */
+    public long getTime() {
+        try {
+            SimpleDateFormat dateFormat = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z", Locale.ENGLISH);
+            return dateFormat.parse(getTimestamp()).getTime() / 1000;
+        } catch (java.text.ParseException excp) {
+            return 0;
+        }
+    }
+
     public String getId() {
         return id;
     }
 
-    public Commit getParent() {
+    public String getParentId() {
         return parent;
     }
 
-    public HashMap<String, Commit> getChildren() {
-        return children;
-    }
-
-    public int numberOfChildren() {
-        return children.size();
-    }
-
-    public String getBranchName() {
-        return branchName;
-    }
-
-    public void setBranchName(String newBranchName) {
-        this.branchName = newBranchName;
-    }
-
-    public void addChild(Commit childCommit) {
-        this.children.put(childCommit.getBranchName(), childCommit);
+    public String getParent2Id() {
+        return parent2;
     }
 
     public void addParent(Commit parentCommit) {
-        this.parent2 = parentCommit;
+        this.parent2 = parentCommit.getId();
     }
 
     public boolean hasFile(String fileName) {
-        if (Blobs.containsKey(fileName)) {
+        if (getBlobs().containsKey(fileName)) {
             return true;
         } else {
             return false;
         }
     }
 
+    /** Returns the commit with id ID, whether loose in .gitlet/commit or
+     *  packed, or null if there is no such commit. */
+    public static Commit load(String id) {
+        byte[] bytes = ObjectStore.read(id, ObjectStore.COMMIT);
+        if (bytes == null) {
+            return null;
+        }
+        return Utils.deserialize(bytes, Commit.class);
+    }
+
     public void save() {
-        File commitDir = new File(".gitlet/commit");
-        if (!commitDir.exists()) {
-            commitDir.mkdir();
+        if (!Repository.COMMIT_DIR.exists()) {
+            Repository.COMMIT_DIR.mkdir();
         }
-        File fileOut = new File(".gitlet/commit/" + this.getId());
+        File fileOut = Utils.join(Repository.COMMIT_DIR, this.getId());
         Utils.writeObject(fileOut, this);
     }
 }
@@ -0,0 +1,358 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/** The shape of the history, kept apart from the commits themselves so that
+ *  it can be walked without reading any of them.
+ *
+ *  .gitlet/commit-graph has one fixed-width row per commit, in the order of
+ *  the commit log, after an 8-byte header (magic and version). A row holds
+ *  the commit's id and root tree id as 20 bytes each, the rows of its two
+ *  parents (-1 if absent), its generation number, its time in seconds
+ *  since the epoch, the offset of its message in the MessageIndex column
+ *  and a Bloom filter of the paths it changed. A row is
+ *  appended for each new commit; a graph that is missing or does not match
+ *  the commit log is rebuilt from the commits.
+ *
+ *  The changed paths of a commit are the files that differ from its first
+ *  parent and every directory containing one. Each is set in the commit's
+ *  BLOOM_BITS-bit filter at BLOOM_HASHES positions derived from two
+ *  MurmurHash3 values of the path, so a filter that does not have all the
+ *  positions of a path set proves the commit did not change it. A commit
+ *  changing too many paths ends up with every bit set, and is always
+ *  checked.
+ *
+ *  @author Rong
+ */
+class CommitGraph {
+
+    private static final int MAGIC = 0x474c4347;
+    private static final int VERSION = 3;
+    private static final int HEADER = 8;
+    /** Bits in the changed-path filter of each row. */
+    private static final int BLOOM_BITS = 512;
+    /** Bits set in a changed-path filter for each path. */
+    private static final int BLOOM_HASHES = 7;
+    /** Bytes in one row. */
+    private static final int ROW = 20 + 20 + 4 + 4 + 4 + 8 + 8 + BLOOM_BITS / 8;
+    private static final int TREE = 20;
+    private static final int PARENT1 = 40;
+    private static final int PARENT2 = 44;
+    private static final int GENERATION = 48;
+    private static final int TIME = 52;
+    private static final int MESSAGE = 60;
+    private static final int BLOOM = 68;
+
+    /** The graph file, mapped into memory. */
+    private final MappedByteBuffer rows;
+
+    private CommitGraph(MappedByteBuffer rows) {
+        this.rows = rows;
+    }
+
+    /** Returns the commit graph of the repository, rebuilding it first if
+     *  it does not cover every commit. */
+    static CommitGraph open() {
+        ensureCurrent();
+        return map();
+    }
+
+    /** Rebuilds the commit graph, and with it the message index, if it does
+     *  not cover every commit. */
+    static void ensureCurrent() {
+        if (!isCurrent(CommitIndex.size())) {
+            rebuild();
+        }
+    }
+
+    /** Appends the row of COMMIT, which has just been added to the end of
+     *  the commit log, indexing its message with HASHER. */
+    static void add(Commit commit, Hasher hasher) {
+        if (!isCurrent(CommitIndex.size() - 1)) {
+            rebuild();
+            return;
+        }
+        CommitGraph graph = map();
+        int parent1 = commit.getParentId() == null ? -1 : CommitIndex.position(commit.getParentId());
+        int parent2 = commit.getParent2Id() == null ? -1 : CommitIndex.position(commit.getParent2Id());
+        int generation = 1;
+        for (int parent : new int[] {parent1, parent2}) {
+            if (parent >= 0) {
+                generation = Math.max(generation, graph.generation(parent) + 1);
+            }
+        }
+        String parentTree = parent1 < 0 ? null : graph.treeAt(parent1);
+        long message = MessageIndex.add(commit.getId(), commit.getMessage(), hasher);
+        Utils.appendContents(Repository.COMMIT_GRAPH,
+                             (Object) row(commit, parent1, parent2, generation, parentTree, message));
+    }
+
+    /** Returns the number of commits in this graph. */
+    int size() {
+        return (rows.capacity() - HEADER) / ROW;
+    }
+
+    /** Returns the row of the commit ID, or -1 if there is none. */
+    int rowOf(String id) {
+        int row = CommitIndex.position(id);
+        return row < size() ? row : -1;
+    }
+
+    String idAt(int row) {
+        return hexAt(row, 0);
+    }
+
+    String treeAt(int row) {
+        return hexAt(row, TREE);
+    }
+
+    /** Returns the row of the first parent of ROW, or -1 if it has none. */
+    int parent1(int row) {
+        return rows.getInt(HEADER + row * ROW + PARENT1);
+    }
+
+    /** Returns the row of the merged-in parent of ROW, or -1 if it has
+     *  none. */
+    int parent2(int row) {
+        return rows.getInt(HEADER + row * ROW + PARENT2);
+    }
+
+    int generation(int row) {
+        return rows.getInt(HEADER + row * ROW + GENERATION);
+    }
+
+    /** Returns the time of ROW in seconds since the epoch. */
+    long time(int row) {
+        return rows.getLong(HEADER + row * ROW + TIME);
+    }
+
+    /** Returns the offset of the message of ROW in the message column. */
+    long messageOffset(int row) {
+        return rows.getLong(HEADER + row * ROW + MESSAGE);
+    }
+
+    /** Returns false if the commit at ROW certainly did not change PATH, a
+     *  '/'-separated file or directory path, and true if it may have. */
+    boolean mayHaveChanged(int row, String path) {
+        int start = HEADER + row * ROW + BLOOM;
+        for (int bit : bloomBits(path)) {
+            if ((rows.get(start + bit / 8) & (1 << (bit % 8))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the row of a lowest common ancestor of rows A and B: a
+     *  commit reachable from both that has no descendant that is also
+     *  reachable from both, or -1 if there is none. Rows are visited
+     *  highest generation first, so a row's reachability from A and B is
+     *  complete by the time it is visited, and the walk ends at the first
+     *  one reachable from both; nothing of lower generation is read. Of
+     *  several such rows (as in a criss-cross merge) the newest is
+     *  returned. */
+    int mergeBase(int a, int b) {
+        final int fromA = 1;
+        final int fromB = 2;
+        Map<Integer, Integer> reachedFrom = new HashMap<>();
+        PriorityQueue<Integer> frontier = new PriorityQueue<>((x, y) -> {
+            int cmp = Integer.compare(generation(y), generation(x));
+            return cmp != 0 ? cmp : Integer.compare(y, x);
+        });
+        reachedFrom.put(a, fromA);
+        reachedFrom.merge(b, fromB, (x, y) -> x | y);
+        frontier.add(a);
+        if (a != b) {
+            frontier.add(b);
+        }
+        while (!frontier.isEmpty()) {
+            int row = frontier.poll();
+            int flags = reachedFrom.get(row);
+            if (flags == (fromA | fromB)) {
+                return row;
+            }
+            for (int parent : new int[] {parent1(row), parent2(row)}) {
+                if (parent < 0) {
+                    continue;
+                }
+                Integer parentFlags = reachedFrom.get(parent);
+                if (parentFlags == null) {
+                    reachedFrom.put(parent, flags);
+                    frontier.add(parent);
+                } else {
+                    reachedFrom.put(parent, parentFlags | flags);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Returns true iff row ANCESTOR can be reached from row DESCENDANT by
+     *  following parents. */
+    boolean isAncestor(int ancestor, int descendant) {
+        return mergeBase(ancestor, descendant) == ancestor;
+    }
+
+    private String hexAt(int row, int offset) {
+        byte[] id = new byte[20];
+        rows.get(HEADER + row * ROW + offset, id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns true iff the graph file is intact and has exactly COUNT
+     *  rows. */
+    private static boolean isCurrent(int count) {
+        File file = Repository.COMMIT_GRAPH;
+        return file.isFile() && file.length() == HEADER + (long) count * ROW;
+    }
+
+    /** Returns the graph file mapped into memory. */
+    private static CommitGraph map() {
+        try (FileChannel channel = FileChannel.open(Repository.COMMIT_GRAPH.toPath(),
+                                                    StandardOpenOption.READ)) {
+            MappedByteBuffer rows = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (rows.getInt(0) != MAGIC || rows.getInt(4) != VERSION) {
+                throw Utils.error("Bad commit graph.");
+            }
+            return new CommitGraph(rows);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Rewrites the graph file, and the message index, from the commits in
+     *  the commit log. */
+    private static void rebuild() {
+        MessageIndex.clear();
+        List<String> ids = CommitIndex.ids();
+        Map<String, Integer> positions = new HashMap<>();
+        int[] generations = new int[ids.size()];
+        String[] trees = new String[ids.size()];
+        Hasher hasher = new Hasher();
+        File temp = Utils.join(Repository.GITLET_DIR, "commit-graph.tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (int i = 0; i < ids.size(); i += 1) {
+                Commit commit = Commit.load(ids.get(i));
+                int parent1 = positions.getOrDefault(commit.getParentId(), -1);
+                int parent2 = positions.getOrDefault(commit.getParent2Id(), -1);
+                generations[i] = 1;
+                for (int parent : new int[] {parent1, parent2}) {
+                    if (parent >= 0) {
+                        generations[i] = Math.max(generations[i], generations[parent] + 1);
+                    }
+                }
+                trees[i] = commit.getTreeId();
+                long message = MessageIndex.add(commit.getId(), commit.getMessage(), hasher);
+                out.write(row(commit, parent1, parent2, generations[i],
+                              parent1 < 0 ? null : trees[parent1], message));
+                positions.put(ids.get(i), i);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        try {
+            Files.move(temp.toPath(), Repository.COMMIT_GRAPH.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the row for COMMIT, whose parents are at rows PARENT1 and
+     *  PARENT2, whose generation number is GENERATION, whose first parent
+     *  has the root tree PARENTTREE and whose message is at offset MESSAGE
+     *  of the message column. */
+    private static byte[] row(Commit commit, int parent1, int parent2, int generation,
+                              String parentTree, long message) {
+        ByteBuffer row = ByteBuffer.allocate(ROW);
+        row.put(Pack.fromHex(commit.getId()));
+        row.put(Pack.fromHex(commit.getTreeId()));
+        row.putInt(parent1).putInt(parent2).putInt(generation).putLong(commit.getTime());
+        row.putLong(message);
+        byte[] filter = new byte[BLOOM_BITS / 8];
+        for (String path : Tree.diff(parentTree, commit.getTreeId()).keySet()) {
+            for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+                setBits(filter, path.substring(0, slash));
+            }
+            setBits(filter, path);
+        }
+        row.put(filter);
+        return row.array();
+    }
+
+    private static void setBits(byte[] filter, String path) {
+        for (int bit : bloomBits(path)) {
+            filter[bit / 8] |= (byte) (1 << (bit % 8));
+        }
+    }
+
+    /** Returns the bits of a changed-path filter that are set for PATH. */
+    private static int[] bloomBits(String path) {
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        int hash1 = murmur3(bytes, 0x293ae76f);
+        int hash2 = murmur3(bytes, 0x7e646e2c);
+        int[] bits = new int[BLOOM_HASHES];
+        for (int i = 0; i < BLOOM_HASHES; i += 1) {
+            bits[i] = Integer.remainderUnsigned(hash1 + i * hash2, BLOOM_BITS);
+        }
+        return bits;
+    }
+
+    /** Returns the 32-bit MurmurHash3 of DATA with seed SEED. */
+    private static int murmur3(byte[] data, int seed) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        int hash = seed;
+        int blocks = data.length / 4;
+        for (int i = 0; i < blocks; i += 1) {
+            int k = (data[4 * i] & 0xff) | (data[4 * i + 1] & 0xff) << 8
+                | (data[4 * i + 2] & 0xff) << 16 | (data[4 * i + 3] & 0xff) << 24;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            hash ^= k;
+            hash = Integer.rotateLeft(hash, 13);
+            hash = hash * 5 + 0xe6546b64;
+        }
+        int k = 0;
+        int tail = blocks * 4;
+        int remaining = data.length & 3;
+        if (remaining >= 3) {
+            k ^= (data[tail + 2] & 0xff) << 16;
+        }
+        if (remaining >= 2) {
+            k ^= (data[tail + 1] & 0xff) << 8;
+        }
+        if (remaining >= 1) {
+            k ^= data[tail] & 0xff;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            hash ^= k;
+        }
+        hash ^= data.length;
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -0,0 +1,237 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/** The ids of all commits in a repository.
+ *
+ *  Ids are appended to .gitlet/commits as they are created, one fixed-width
+ *  line each; the position of an id in that log is also its row in the
+ *  commit graph. Abbreviated ids are resolved against .gitlet/commit-index,
+ *  a sorted copy of the first part of that log in which each id is followed
+ *  by its position, by binary search over its memory-mapped rows. Ids
+ *  appended since the sorted copy was last rebuilt are scanned directly;
+ *  once there are more than TAIL_LIMIT of them they are merged into the
+ *  sorted copy.
+ *
+ *  @author Rong
+ */
+class CommitIndex {
+
+    private static final int MAGIC = 0x474c4932;
+    /** Bytes in the header of the sorted index: magic and row count. */
+    private static final int HEADER = 8;
+    /** Bytes in one line of the commit log. */
+    private static final int LOG_ROW = Utils.UID_LENGTH + 1;
+    /** Bytes in one row of the sorted index: an id and its log position. */
+    private static final int SORTED_ROW = Utils.UID_LENGTH + 4;
+    /** Number of unsorted ids tolerated before the sorted index is rebuilt. */
+    private static final int TAIL_LIMIT = 256;
+
+    /** Records the new commit ID. */
+    static void add(String id) {
+        Utils.appendContents(Repository.COMMIT_INDEX, id, "\n");
+        if (logSize() - sortedSize() > TAIL_LIMIT) {
+            rebuild();
+        }
+    }
+
+    /** Returns the ids of all commits, oldest first. */
+    static List<String> ids() {
+        List<String> ids = new ArrayList<>();
+        if (!Repository.COMMIT_INDEX.isFile()) {
+            return ids;
+        }
+        byte[] log = Utils.readContents(Repository.COMMIT_INDEX);
+        for (int i = 0; i + LOG_ROW <= log.length; i += LOG_ROW) {
+            ids.add(new String(log, i, Utils.UID_LENGTH, StandardCharsets.US_ASCII));
+        }
+        return ids;
+    }
+
+    /** Returns the number of commits. */
+    static int size() {
+        return logSize();
+    }
+
+    /** Returns the position of the commit ID, a full id, in the commit log,
+     *  or -1 if there is no such commit. */
+    static int position(String id) {
+        MappedByteBuffer sorted = mapSorted();
+        int count = 0;
+        if (sorted != null) {
+            count = sorted.getInt(4);
+            int i = lowerBound(sorted, count, id);
+            if (i < count && startsWith(sorted, i, id)) {
+                return sorted.getInt(HEADER + i * SORTED_ROW + Utils.UID_LENGTH);
+            }
+        }
+        List<String> tail = tail(count);
+        int i = tail.indexOf(id);
+        return i < 0 ? -1 : count + i;
+    }
+
+    /** Returns the full id of the only commit whose id starts with PREFIX,
+     *  or null if there is none. Throws a GitletException if more than one
+     *  commit matches. */
+    static String resolve(String prefix) {
+        prefix = prefix.toLowerCase();
+        if (prefix.isEmpty() || prefix.length() > Utils.UID_LENGTH) {
+            return null;
+        }
+        for (int i = 0; i < prefix.length(); i += 1) {
+            if (Character.digit(prefix.charAt(i), 16) < 0) {
+                return null;
+            }
+        }
+        List<String> matches = new ArrayList<>();
+        MappedByteBuffer sorted = mapSorted();
+        int count = 0;
+        if (sorted != null) {
+            count = sorted.getInt(4);
+            for (int i = lowerBound(sorted, count, prefix);
+                 i < count && matches.size() < 2 && startsWith(sorted, i, prefix); i += 1) {
+                matches.add(rowAt(sorted, i));
+            }
+        }
+        for (String id : tail(count)) {
+            if (id.startsWith(prefix) && !matches.contains(id)) {
+                matches.add(id);
+            }
+        }
+        if (matches.size() > 1) {
+            throw Utils.error("Ambiguous commit id.");
+        }
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+
+    /** Returns the index of the first of the COUNT rows of SORTED that is
+     *  not less than PREFIX. */
+    private static int lowerBound(MappedByteBuffer sorted, int count, String prefix) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareRow(sorted, mid, prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the ids after the first SORTEDCOUNT in the log, which the
+     *  sorted index does not cover. */
+    private static List<String> tail(int sortedCount) {
+        List<String> ids = new ArrayList<>();
+        long start = (long) sortedCount * LOG_ROW;
+        if (!Repository.COMMIT_INDEX.isFile()) {
+            return ids;
+        }
+        try (RandomAccessFile log = new RandomAccessFile(Repository.COMMIT_INDEX, "r")) {
+            byte[] rows = new byte[(int) (log.length() - start)];
+            log.seek(start);
+            log.readFully(rows);
+            for (int i = 0; i + LOG_ROW <= rows.length; i += LOG_ROW) {
+                ids.add(new String(rows, i, Utils.UID_LENGTH, StandardCharsets.US_ASCII));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return ids;
+    }
+
+    /** Rewrites the sorted index so that it covers the whole log. */
+    private static void rebuild() {
+        List<String> ids = ids();
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += 1) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(ids::get));
+        File temp = Utils.join(Repository.GITLET_DIR, "commit-index.tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(ids.size());
+            for (int position : order) {
+                out.write(ids.get(position).getBytes(StandardCharsets.US_ASCII));
+                out.writeInt(position);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        try {
+            Files.move(temp.toPath(), Repository.SORTED_COMMIT_INDEX.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    private static int logSize() {
+        return (int) (Repository.COMMIT_INDEX.length() / LOG_ROW);
+    }
+
+    private static int sortedSize() {
+        MappedByteBuffer sorted = mapSorted();
+        return sorted == null ? 0 : sorted.getInt(4);
+    }
+
+    /** Returns the sorted index, mapped into memory, or null if there is
+     *  none yet. An index in an older format is rebuilt first. */
+    private static MappedByteBuffer mapSorted() {
+        File file = Repository.SORTED_COMMIT_INDEX;
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer sorted = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (sorted.capacity() < HEADER) {
+                throw Utils.error("Bad commit index.");
+            }
+            if (sorted.getInt(0) != MAGIC) {
+                rebuild();
+                return mapSorted();
+            }
+            return sorted;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    private static String rowAt(MappedByteBuffer sorted, int i) {
+        byte[] id = new byte[Utils.UID_LENGTH];
+        sorted.get(HEADER + i * SORTED_ROW, id);
+        return new String(id, StandardCharsets.US_ASCII);
+    }
+
+    /** Compares the first PREFIX.length() characters of row I with PREFIX. */
+    private static int compareRow(MappedByteBuffer sorted, int i, String prefix) {
+        int start = HEADER + i * SORTED_ROW;
+        for (int k = 0; k < prefix.length(); k += 1) {
+            int cmp = Character.compare((char) sorted.get(start + k), prefix.charAt(k));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean startsWith(MappedByteBuffer sorted, int i, String prefix) {
+        return compareRow(sorted, i, prefix) == 0;
+    }
+}
@@ -1,91 +1,152 @@
 package gitlet;
 
 import java.io.Serializable;
-import java.io.File;
 import java.util.*;
 
+/** The branch structure of a repository. Only branch heads are kept here, by
+ *  commit id; commits themselves live in .gitlet/commit and are read on
+ *  demand, so loading and saving a CommitTree does not depend on the size of
+ *  the history.
+ *
+ *  @author Rong
+ */
 public class CommitTree implements Serializable {
+    private static final long serialVersionUID = -2608657365748035781L;
 
-    private Map<String, Commit> branches;
+    /** Maps each branch name to the id of its head commit. */
+    private Map<String, String> branches;
 
-    private Map<String, Commit> commits;
+    /** The name of the checked-out branch. */
+    private String currentBranch;
 
-    private Map<String, Set<String>> rmFiles;
+    /** Commits read from disk while this CommitTree has been in use. */
+    private transient Map<String, Commit> loaded;
 
-    private Commit main;
-
-    public CommitTree(Commit currCommit) {
+    public CommitTree(String branchName, Commit initCommit) {
         this.branches = new TreeMap<>();
-        this.commits = new TreeMap<>();
-        this.rmFiles = new TreeMap<>();
-        this.main = currCommit;
-        this.addBranch(currCommit.getBranchName(), currCommit);
-        this.commits.put(currCommit.getId(), currCommit);
+        this.currentBranch = branchName;
+        this.addCommit(initCommit);
+        this.addBranch(branchName, initCommit);
     }
 
-    public Map<String, Commit> getBranches() {
+    public Map<String, String> getBranches() {
         return branches;
     }
 
-    public Map<String, Commit> getCommits() {
-        return commits;
+    public String getCurrentBranch() {
+        return currentBranch;
     }
 
-    public Map<String, Set<String>> getRmFiles() {
-        return rmFiles;
+    /** Gives COMMIT its id, writes it to the commit store and records it in
+     *  the commit index and the commit graph. A commit identical to one
+     *  already stored is not stored again. Its trees, its id and the hash
+     *  its message is indexed by are all computed with one Hasher. */
+    public void addCommit(Commit commit) {
+        Hasher hasher = new Hasher();
+        commit.seal(hasher);
+        if (!ObjectStore.contains(commit.getId(), ObjectStore.COMMIT)) {
+            commit.save();
+        }
+        // A command that failed after saving the same commit may have left
+        // it out of the index.
+        if (CommitIndex.position(commit.getId()) < 0) {
+            CommitIndex.add(commit.getId());
+            CommitGraph.add(commit, hasher);
+        }
+        loadedCommits().put(commit.getId(), commit);
     }
 
-    public void addRmFile(String branchName, String fileName) {
-        if (!this.rmFiles.containsKey(branchName)) {
-            this.rmFiles.put(branchName, new TreeSet<>());
-        }
-        this.rmFiles.get(branchName).add(fileName);
-        this.save();
+    public void addBranch(String branchName, Commit newBranch) {
+        branches.put(branchName, newBranch.getId());
     }
 
-    public void rmRmFile(String branchName, String fileName) {
-        this.rmFiles.get(branchName).remove(fileName);
-        this.save();
+    public Commit getMain() {
+        return getCommit(branches.get(currentBranch));
     }
 
+    public Commit getBranch(String branchName) {
+        String id = branches.get(branchName);
+        if (id == null) {
+            return null;
+        }
+        return getCommit(id);
+    }
 
-    public void addCommit(String commitId, Commit commit) {
-        this.commits.put(commitId, commit);
+    public void setMain(String branchName, Commit mainCommit) {
+        this.currentBranch = branchName;
+        branches.put(branchName, mainCommit.getId());
     }
 
-    public void addBranch(String branchName, Commit newBranch) {
-        branches.put(branchName, newBranch);
+    /** Returns the commit with the full id ID, or null if there is none.
+     *  Each commit is read from disk at most once per CommitTree. */
+    public Commit getCommit(String id) {
+        if (id == null) {
+            return null;
+        }
+        Map<String, Commit> cache = loadedCommits();
+        Commit commit = cache.get(id);
+        if (commit == null) {
+            commit = Commit.load(id);
+            if (commit != null) {
+                cache.put(id, commit);
+            }
+        }
+        return commit;
     }
 
-    public Commit getMain() {
-        return main;
+    /** Returns a lowest common ancestor of A and B over all parents: a
+     *  commit reachable from both that has no descendant that is also
+     *  reachable from both. The search runs over the commit graph, so only
+     *  the result is read from the commit store. */
+    public Commit mergeBase(Commit a, Commit b) {
+        CommitGraph graph = CommitGraph.open();
+        int base = graph.mergeBase(graph.rowOf(a.getId()), graph.rowOf(b.getId()));
+        return base < 0 ? null : getCommit(graph.idAt(base));
     }
 
-    public void setMain(String branchName, Commit mainCommit) {
-        this.main = mainCommit;
-        mainCommit.setBranchName(branchName);
-        branches.put(branchName, mainCommit);
+    /** Returns the ids of all commits in the repository, oldest first. */
+    public List<String> commitIds() {
+        return CommitIndex.ids();
     }
 
+    private Map<String, Commit> loadedCommits() {
+        if (loaded == null) {
+            loaded = new HashMap<>();
+        }
+        return loaded;
+    }
+
+    /** Returns the branch structure, held in memory when a daemon is
+     *  running this command and .gitlet/commitTree.ser has not changed. */
     public static CommitTree load() {
-        File fileIn = new File(".gitlet/commitTree.ser");
-        return Utils.readObject(fileIn, CommitTree.class);
+        Session session = Session.current();
+        if (session != null) {
+            return session.load(() -> Utils.readObject(Repository.COMMIT_TREE, CommitTree.class),
+                                Repository.COMMIT_TREE);
+        }
+        return Utils.readObject(Repository.COMMIT_TREE, CommitTree.class);
     }
 
     public void save() {
-        File fileOut = new File(".gitlet/commitTree.ser");
-        Utils.writeObject(fileOut, this);
+        Session session = Session.current();
+        if (session != null && session.defers()) {
+            session.defer(this, this::write, Repository.COMMIT_TREE);
+            return;
+        }
+        write();
+        if (session != null) {
+            session.saved(this, Repository.COMMIT_TREE);
+        }
+    }
+
+    private void write() {
+        Utils.writeObject(Repository.COMMIT_TREE, this);
     }
 
+    /** Returns the commit whose id is or starts with COMMITID, or null if
+     *  there is none. Throws a GitletException if COMMITID abbreviates
+     *  more than one commit id. */
     public Commit findCommit(String commitId) {
-        if (commits.containsKey(commitId)) {
-            return commits.get(commitId);
-        }
-        for (String id: commits.keySet()) {
-            if (id.contains(commitId)) {
-                return findCommit(id);
-            }
-        }
-        return null;
+        return getCommit(CommitIndex.resolve(commitId));
     }
 }
@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/** Runs gitlet commands for one repository in a long-lived process, so
+ *  that commands do not pay for starting a JVM and reading the
+ *  repository's state each time. The daemon listens on the Unix domain
+ *  socket .gitlet/daemon.sock and runs one command at a time against a
+ *  Session, which keeps state in memory between commands.
+ *
+ *  A client sends its working directory, the number of arguments and the
+ *  arguments, each as a UTF string. The daemon answers with one byte, 1 if
+ *  it will run the command and 0 if the client is in a different directory
+ *  and must run it itself, and then sends the command's output and closes
+ *  the connection.
+ *
+ *  @author Rong
+ */
+class Daemon {
+
+    /** Answers to a request. */
+    private static final byte DECLINED = 0, ACCEPTED = 1;
+
+    /** Serves commands until the daemon is stopped with "daemon --stop". */
+    static void serve() {
+        if (forward(new String[] {"daemon", "--status"})) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(Repository.DAEMON_SOCKET.toPath());
+            ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(Repository.DAEMON_SOCKET.toPath()));
+            Session session = new Session();
+            Session.run(session, () -> {
+                try {
+                    boolean serving = true;
+                    while (serving) {
+                        serving = accept(server, session);
+                    }
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp);
+                }
+            });
+            server.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            Repository.DAEMON_SOCKET.delete();
+        }
+    }
+
+    /** Runs the next command sent to SERVER against SESSION. Returns false
+     *  once the daemon has been asked to stop. */
+    private static boolean accept(ServerSocketChannel server, Session session) throws IOException {
+        SocketChannel client = server.accept();
+        try (client) {
+            DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+            String directory = in.readUTF();
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i += 1) {
+                args[i] = in.readUTF();
+            }
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(client));
+            if (!directory.equals(Repository.CWD.getCanonicalPath()) || args.length == 0) {
+                out.write(DECLINED);
+                out.flush();
+                return true;
+            }
+            out.write(ACCEPTED);
+            if (args.length == 2 && args[0].equals("daemon") && args[1].equals("--stop")) {
+                out.flush();
+                return false;
+            }
+            if (args.length == 2 && args[0].equals("daemon") && args[1].equals("--status")) {
+                out.write("A daemon is already running.\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                return true;
+            }
+            run(args, session, new PrintStream(out));
+        } catch (IOException excp) {
+            // The client went away; carry on with the next one.
+        }
+        return true;
+    }
+
+    /** Runs the command ARGS against SESSION, printing its output to OUT. */
+    private static void run(String[] args, Session session, PrintStream out) {
+        PrintStream stdout = System.out;
+        System.setOut(out);
+        try {
+            Main.run(args);
+        } catch (GitletException excp) {
+            session.invalidate();
+            System.out.println(excp.getMessage());
+        } catch (RuntimeException excp) {
+            // As in a batch, the client only learns that the command failed;
+            // the details go to the daemon's standard error.
+            session.invalidate();
+            System.out.println("Failed: " + String.join(" ", args));
+            excp.printStackTrace();
+        } finally {
+            System.setOut(stdout);
+            out.flush();
+        }
+    }
+
+    /** Sends ARGS to the daemon of the repository in the working directory,
+     *  if one is running, and copies its output to System.out. Returns true
+     *  iff the daemon ran the command. */
+    static boolean forward(String[] args) {
+        if (!Repository.DAEMON_SOCKET.exists()) {
+            return false;
+        }
+        boolean accepted = false;
+        try (SocketChannel channel = SocketChannel.open(
+                UnixDomainSocketAddress.of(Repository.DAEMON_SOCKET.toPath()))) {
+            DataOutputStream request = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            request.writeUTF(Repository.CWD.getCanonicalPath());
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+            InputStream response = Channels.newInputStream(channel);
+            if (response.read() != ACCEPTED) {
+                return false;
+            }
+            accepted = true;
+            response.transferTo(System.out);
+            System.out.flush();
+            return true;
+        } catch (IOException excp) {
+            // Either a socket left behind by a daemon that is no longer
+            // running, or a daemon that failed while running the command,
+            // which must not be run a second time.
+            return accepted;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Binary deltas between two versions of a file. A delta is a header
+ *  holding the lengths of the base and the result, followed by a sequence
+ *  of instructions that either copy a range of the base or insert literal
+ *  bytes. Packs use deltas to store a blob as the edits that turn a similar
+ *  blob into it.
+ *
+ *  @author Rong
+ */
+class Delta {
+
+    /** Instruction tag for literal bytes taken from the delta itself. */
+    private static final int INSERT = 0;
+    /** Instruction tag for a range copied out of the base. */
+    private static final int COPY = 1;
+    /** Length of the base blocks that are indexed for matching. */
+    private static final int BLOCK = 16;
+    /** Multiplier of the rolling hash over BLOCK bytes. */
+    private static final int PRIME = 31;
+
+    /** Returns a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        if (base.length < BLOCK || target.length < BLOCK) {
+            insert(out, target, 0, target.length);
+            return out.toByteArray();
+        }
+
+        Map<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        int highPower = 1;
+        for (int k = 1; k < BLOCK; k += 1) {
+            highPower *= PRIME;
+        }
+
+        int pending = 0;
+        int i = 0;
+        int h = hash(target, 0);
+        while (i + BLOCK <= target.length) {
+            Integer candidate = blocks.get(h);
+            if (candidate != null && regionsMatch(base, candidate, target, i, BLOCK)) {
+                int from = candidate;
+                int at = i;
+                int length = BLOCK;
+                while (from + length < base.length && at + length < target.length
+                       && base[from + length] == target[at + length]) {
+                    length += 1;
+                }
+                while (at > pending && from > 0 && base[from - 1] == target[at - 1]) {
+                    from -= 1;
+                    at -= 1;
+                    length += 1;
+                }
+                insert(out, target, pending, at - pending);
+                out.write(COPY);
+                writeVarint(out, from);
+                writeVarint(out, length);
+                i = at + length;
+                pending = i;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    h = (h - target[i] * highPower) * PRIME + target[i + BLOCK];
+                }
+                i += 1;
+            }
+        }
+        insert(out, target, pending, target.length - pending);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        int baseLength = readVarint(delta, pos);
+        if (baseLength != base.length) {
+            throw Utils.error("Delta does not match its base.");
+        }
+        byte[] result = new byte[readVarint(delta, pos)];
+        int written = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++];
+            if (op == COPY) {
+                int from = readVarint(delta, pos);
+                int length = readVarint(delta, pos);
+                System.arraycopy(base, from, result, written, length);
+                written += length;
+            } else {
+                int length = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, written, length);
+                pos[0] += length;
+                written += length;
+            }
+        }
+        if (written != result.length) {
+            throw Utils.error("Corrupt delta.");
+        }
+        return result;
+    }
+
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * PRIME + data[start + k];
+        }
+        return h;
+    }
+
+    private static boolean regionsMatch(byte[] a, int aStart, byte[] b, int bStart, int length) {
+        for (int k = 0; k < length; k += 1) {
+            if (a[aStart + k] != b[bStart + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void insert(ByteArrayOutputStream out, byte[] data, int start, int length) {
+        if (length == 0) {
+            return;
+        }
+        out.write(INSERT);
+        writeVarint(out, length);
+        out.write(data, start, length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data[pos[0]++] & 0xff;
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
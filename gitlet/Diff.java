@@ -0,0 +1,335 @@
+package gitlet;
+
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Line diffs between two versions of a file. Lines are compared as byte
+ *  ranges of the stored content, never decoded; each distinct line is first
+ *  numbered through a hash table, so the diff itself compares ints. The
+ *  diff is Myers' O(ND) algorithm with the linear-space refinement: the
+ *  middle snake of an optimal path is found by searching forward and
+ *  backward at once, and the parts before and after it are diffed in turn,
+ *  so memory stays proportional to the number of lines.
+ *
+ *  @author Rong
+ */
+class Diff {
+
+    /** Lines of context shown around each change. */
+    private static final int CONTEXT = 3;
+
+    /** Bytes examined for a NUL byte to tell binary content from text. */
+    private static final int BINARY_CHECK = 8000;
+
+    /** A change between two sequences of lines: lines [beginA, endA) of the
+     *  first are replaced by lines [beginB, endB) of the second. Either range
+     *  may be empty. */
+    static class Edit {
+        final int beginA, endA, beginB, endB;
+
+        Edit(int beginA, int endA, int beginB, int endB) {
+            this.beginA = beginA;
+            this.endA = endA;
+            this.beginB = beginB;
+            this.endB = endB;
+        }
+    }
+
+    /** The lines of some content. Line I is the bytes [start(I), end(I)),
+     *  including its terminating newline if it has one. */
+    static class Lines {
+        /** The content. */
+        final byte[] data;
+        /** The offset of each line, followed by the length of DATA. */
+        private final int[] starts;
+
+        Lines(byte[] data) {
+            this.data = data;
+            int count = 0;
+            for (int i = 0; i < data.length; i += 1) {
+                if (data[i] == '\n') {
+                    count += 1;
+                }
+            }
+            if (data.length > 0 && data[data.length - 1] != '\n') {
+                count += 1;
+            }
+            starts = new int[count + 1];
+            int line = 1;
+            for (int i = 0; i < data.length && line < count; i += 1) {
+                if (data[i] == '\n') {
+                    starts[line] = i + 1;
+                    line += 1;
+                }
+            }
+            starts[count] = data.length;
+        }
+
+        /** Returns the number of lines. */
+        int size() {
+            return starts.length - 1;
+        }
+
+        int start(int line) {
+            return starts[line];
+        }
+
+        int end(int line) {
+            return starts[line + 1];
+        }
+
+        /** Returns true iff line I ends with a newline. */
+        boolean terminated(int line) {
+            return end(line) > start(line) && data[end(line) - 1] == '\n';
+        }
+
+        /** Returns line I, decoded, without its newline. */
+        String text(int line) {
+            int end = terminated(line) ? end(line) - 1 : end(line);
+            return new String(data, start(line), end - start(line), StandardCharsets.UTF_8);
+        }
+    }
+
+    /** A line used as a hash key: a byte range of some content. */
+    private static class Key {
+        private final byte[] data;
+        private final int start, end, hash;
+
+        Key(byte[] data, int start, int end) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            int h = 1;
+            for (int i = start; i < end; i += 1) {
+                h = 31 * h + data[i];
+            }
+            hash = h;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return hash == key.hash
+                && Arrays.equals(data, start, end, key.data, key.start, key.end);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /** The lines being compared, each replaced by the number of its
+     *  content. */
+    private final int[] a, b;
+
+    /** The edits found so far, in order. */
+    private final List<Edit> edits = new ArrayList<>();
+
+    private Diff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+    }
+
+    /** Returns the edits that turn OLD into NEW, in order. Edits are never
+     *  adjacent: the lines between two edits are equal and at least one. */
+    static List<Edit> diff(Lines old, Lines new_) {
+        Map<Key, Integer> numbers = new HashMap<>();
+        Diff diff = new Diff(number(old, numbers), number(new_, numbers));
+        diff.compare(0, diff.a.length, 0, diff.b.length);
+        return diff.edits;
+    }
+
+    /** Returns the number of each line of LINES, numbering new lines in
+     *  NUMBERS. */
+    private static int[] number(Lines lines, Map<Key, Integer> numbers) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            Key key = new Key(lines.data, lines.start(i), lines.end(i));
+            Integer n = numbers.get(key);
+            if (n == null) {
+                n = numbers.size();
+                numbers.put(key, n);
+            }
+            result[i] = n;
+        }
+        return result;
+    }
+
+    /** Adds the edits that turn a[aStart, aEnd) into b[bStart, bEnd). */
+    private void compare(int aStart, int aEnd, int bStart, int bEnd) {
+        while (aStart < aEnd && bStart < bEnd && a[aStart] == b[bStart]) {
+            aStart += 1;
+            bStart += 1;
+        }
+        while (aStart < aEnd && bStart < bEnd && a[aEnd - 1] == b[bEnd - 1]) {
+            aEnd -= 1;
+            bEnd -= 1;
+        }
+        if (aStart == aEnd || bStart == bEnd) {
+            if (aStart < aEnd || bStart < bEnd) {
+                add(new Edit(aStart, aEnd, bStart, bEnd));
+            }
+            return;
+        }
+        int[] snake = middleSnake(aStart, aEnd, bStart, bEnd);
+        compare(aStart, snake[0], bStart, snake[1]);
+        compare(snake[2], aEnd, snake[3], bEnd);
+    }
+
+    /** Adds EDIT, joining it to the last edit if the two touch. */
+    private void add(Edit edit) {
+        if (!edits.isEmpty()) {
+            Edit last = edits.get(edits.size() - 1);
+            if (last.endA == edit.beginA && last.endB == edit.beginB) {
+                edits.set(edits.size() - 1, new Edit(last.beginA, edit.endA, last.beginB, edit.endB));
+                return;
+            }
+        }
+        edits.add(edit);
+    }
+
+    /** Returns the start and end, {x, y, u, v}, of the middle snake of an
+     *  optimal path from (aStart, bStart) to (aEnd, bEnd). Both ranges must
+     *  be non-empty and differ in their first and last lines. */
+    private int[] middleSnake(int aStart, int aEnd, int bStart, int bEnd) {
+        int n = aEnd - aStart;
+        int m = bEnd - bStart;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int offset = max + 1;
+        int[] forward = new int[2 * max + 3];
+        int[] backward = new int[2 * max + 3];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && forward[offset + k - 1] < forward[offset + k + 1]
+                    ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && a[aStart + x] == b[bStart + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                int reverse = delta - k;
+                if (odd && reverse >= -(d - 1) && reverse <= d - 1
+                    && x + backward[offset + reverse] >= n) {
+                    return new int[] {aStart + x0, bStart + y0, aStart + x, bStart + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && backward[offset + k - 1] < backward[offset + k + 1]
+                    ? backward[offset + k + 1] : backward[offset + k - 1] + 1;
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && a[aEnd - 1 - x] == b[bEnd - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[offset + k] = x;
+                int reverse = delta - k;
+                if (!odd && reverse >= -d && reverse <= d
+                    && x + forward[offset + reverse] >= n) {
+                    return new int[] {aEnd - x, bEnd - y, aEnd - x0, bEnd - y0};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Returns true iff CONTENT looks binary rather than text. */
+    static boolean isBinary(byte[] content) {
+        for (int i = 0; i < Math.min(content.length, BINARY_CHECK); i += 1) {
+            if (content[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Prints to OUT the unified diff of file PATH from OLD to NEW. Either
+     *  may be null for a file that does not exist on that side. */
+    static void print(PrintWriter out, String path, byte[] old, byte[] new_) {
+        String oldName = old == null ? "/dev/null" : "a/" + path;
+        String newName = new_ == null ? "/dev/null" : "b/" + path;
+        out.println("diff --git a/" + path + " b/" + path);
+        if (old == null) {
+            out.println("new file");
+        } else if (new_ == null) {
+            out.println("deleted file");
+        }
+        byte[] before = old == null ? new byte[0] : old;
+        byte[] after = new_ == null ? new byte[0] : new_;
+        if (isBinary(before) || isBinary(after)) {
+            out.println("Binary files " + oldName + " and " + newName + " differ");
+            return;
+        }
+        Lines a = new Lines(before);
+        Lines b = new Lines(after);
+        List<Edit> edits = diff(a, b);
+        if (edits.isEmpty()) {
+            return;
+        }
+        out.println("--- " + oldName);
+        out.println("+++ " + newName);
+        int first = 0;
+        while (first < edits.size()) {
+            int last = first;
+            while (last + 1 < edits.size()
+                   && edits.get(last + 1).beginA - edits.get(last).endA <= 2 * CONTEXT) {
+                last += 1;
+            }
+            printHunk(out, a, b, edits.subList(first, last + 1));
+            first = last + 1;
+        }
+    }
+
+    /** Prints to OUT one hunk of the diff from A to B, made of EDITS and the
+     *  context around them. */
+    private static void printHunk(PrintWriter out, Lines a, Lines b, List<Edit> edits) {
+        Edit head = edits.get(0);
+        Edit tail = edits.get(edits.size() - 1);
+        int aStart = Math.max(0, head.beginA - CONTEXT);
+        int bStart = head.beginB - (head.beginA - aStart);
+        int aEnd = Math.min(a.size(), tail.endA + CONTEXT);
+        int bEnd = tail.endB + (aEnd - tail.endA);
+        out.println("@@ -" + range(aStart, aEnd) + " +" + range(bStart, bEnd) + " @@");
+        int i = aStart;
+        for (Edit edit : edits) {
+            for (; i < edit.beginA; i += 1) {
+                printLine(out, ' ', a, i);
+            }
+            for (i = edit.beginA; i < edit.endA; i += 1) {
+                printLine(out, '-', a, i);
+            }
+            for (int j = edit.beginB; j < edit.endB; j += 1) {
+                printLine(out, '+', b, j);
+            }
+        }
+        for (; i < aEnd; i += 1) {
+            printLine(out, ' ', a, i);
+        }
+    }
+
+    /** Returns the hunk header range of lines [START, END). */
+    private static String range(int start, int end) {
+        int length = end - start;
+        return (length == 0 ? start : start + 1) + (length == 1 ? "" : "," + length);
+    }
+
+    private static void printLine(PrintWriter out, char mark, Lines lines, int line) {
+        out.println(mark + lines.text(line));
+        if (!lines.terminated(line)) {
+            out.println("\\ No newline at end of file");
+        }
+    }
+}
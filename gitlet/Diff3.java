@@ -0,0 +1,134 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/** The three-way line merge of two versions of a file against the version
+ *  they both started from. Each version is diffed against the base; runs
+ *  of base lines changed by only one side take that side's lines, and runs
+ *  changed by both sides, or changed next to each other, become conflicts
+ *  unless both sides made the same change. Lines are copied as byte ranges
+ *  of the three versions, so nothing is decoded.
+ *
+ *  A conflict is written as
+ *      <<<<<<< HEAD
+ *      (the current branch's lines)
+ *      =======
+ *      (the given branch's lines)
+ *      >>>>>>>
+ *
+ *  @author Rong
+ */
+class Diff3 {
+
+    private static final String START = "<<<<<<< HEAD\n";
+    private static final String MIDDLE = "=======\n";
+    private static final String END = ">>>>>>>\n";
+
+    /** The merged content. */
+    private final byte[] content;
+
+    /** True iff CONTENT has at least one conflict. */
+    private final boolean conflicted;
+
+    private Diff3(byte[] content, boolean conflicted) {
+        this.content = content;
+        this.conflicted = conflicted;
+    }
+
+    byte[] getContent() {
+        return content;
+    }
+
+    boolean isConflicted() {
+        return conflicted;
+    }
+
+    /** Returns the merge of OURS and THEIRS, both changed from BASE. Any of
+     *  them may be null for a file that does not exist in that version. */
+    static Diff3 merge(byte[] base, byte[] ours, byte[] theirs) {
+        Diff.Lines b = new Diff.Lines(base == null ? new byte[0] : base);
+        Diff.Lines o = new Diff.Lines(ours == null ? new byte[0] : ours);
+        Diff.Lines t = new Diff.Lines(theirs == null ? new byte[0] : theirs);
+        List<Diff.Edit> oursEdits = Diff.diff(b, o);
+        List<Diff.Edit> theirsEdits = Diff.diff(b, t);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean conflicted = false;
+        int copied = 0;
+        int i = 0;
+        int j = 0;
+        while (i < oursEdits.size() || j < theirsEdits.size()) {
+            // Gather the edits of both sides that overlap or touch, starting with the earliest.
+            boolean oursFirst = j == theirsEdits.size()
+                || i < oursEdits.size() && oursEdits.get(i).beginA <= theirsEdits.get(j).beginA;
+            int low = (oursFirst ? oursEdits.get(i) : theirsEdits.get(j)).beginA;
+            int high = low;
+            int oursStart = i;
+            int theirsStart = j;
+            while (true) {
+                if (i < oursEdits.size() && oursEdits.get(i).beginA <= high) {
+                    high = Math.max(high, oursEdits.get(i).endA);
+                    i += 1;
+                } else if (j < theirsEdits.size() && theirsEdits.get(j).beginA <= high) {
+                    high = Math.max(high, theirsEdits.get(j).endA);
+                    j += 1;
+                } else {
+                    break;
+                }
+            }
+            copy(out, b, copied, low);
+            copied = high;
+            if (j == theirsStart) {
+                copy(out, o, start(oursEdits.get(oursStart), low), end(oursEdits.get(i - 1), high));
+            } else if (i == oursStart) {
+                copy(out, t, start(theirsEdits.get(theirsStart), low), end(theirsEdits.get(j - 1), high));
+            } else {
+                int oursFrom = start(oursEdits.get(oursStart), low);
+                int oursTo = end(oursEdits.get(i - 1), high);
+                int theirsFrom = start(theirsEdits.get(theirsStart), low);
+                int theirsTo = end(theirsEdits.get(j - 1), high);
+                if (Arrays.equals(o.data, o.start(oursFrom), o.start(oursTo),
+                                  t.data, t.start(theirsFrom), t.start(theirsTo))) {
+                    copy(out, o, oursFrom, oursTo);
+                } else {
+                    conflicted = true;
+                    out.writeBytes(START.getBytes(StandardCharsets.UTF_8));
+                    copyLine(out, o, oursFrom, oursTo);
+                    out.writeBytes(MIDDLE.getBytes(StandardCharsets.UTF_8));
+                    copyLine(out, t, theirsFrom, theirsTo);
+                    out.writeBytes(END.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        copy(out, b, copied, b.size());
+        return new Diff3(out.toByteArray(), conflicted);
+    }
+
+    /** Returns the line of one side where base line LOW lands, given that
+     *  FIRST is that side's first edit in a run starting at LOW. */
+    private static int start(Diff.Edit first, int low) {
+        return first.beginB - (first.beginA - low);
+    }
+
+    /** Returns the line of one side where base line HIGH lands, given that
+     *  LAST is that side's last edit in a run ending at HIGH. */
+    private static int end(Diff.Edit last, int high) {
+        return last.endB + (high - last.endA);
+    }
+
+    /** Writes lines [FROM, TO) of LINES to OUT. */
+    private static void copy(ByteArrayOutputStream out, Diff.Lines lines, int from, int to) {
+        out.write(lines.data, lines.start(from), lines.start(to) - lines.start(from));
+    }
+
+    /** Writes lines [FROM, TO) of LINES to OUT, ending them with a newline
+     *  if the last one has none, so that a conflict marker can follow. */
+    private static void copyLine(ByteArrayOutputStream out, Diff.Lines lines, int from, int to) {
+        copy(out, lines, from, to);
+        if (to > from && !lines.terminated(to - 1)) {
+            out.write('\n');
+        }
+    }
+}
@@ -5,7 +5,7 @@ package gitlet;
  *  @author P. N. Hilfinger
  */
 class GitletException extends RuntimeException {
-
+    private static final long serialVersionUID = -1679980020093532642L;
 
     /** A GitletException with no message. */
     GitletException() {
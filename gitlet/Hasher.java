@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** A reusable SHA-1 hasher. Code that hashes many things keeps one Hasher
+ *  and hashes them all with it, so the digest is set up once. Files are
+ *  read through a fixed-size buffer, allocated on the first file, so
+ *  hashing a file takes the same memory however large the file is. A
+ *  Hasher is not thread-safe; code that hashes from several threads keeps
+ *  one per thread, and code that hashes only now and then uses the one
+ *  forThread() finds for its thread.
+ *
+ *  @author Rong
+ */
+class Hasher {
+
+    /** Size of the read buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final MessageDigest digest = newDigest();
+
+    /** The buffer files are read through, or null until one is. */
+    private ByteBuffer buffer;
+
+    /** Returns the Hasher the session of the calling thread keeps for it,
+     *  or a new one outside a session. Every method of a Hasher finishes its
+     *  hash before it returns, so code on one thread can share it freely. */
+    static Hasher forThread() {
+        Session session = Session.current();
+        return session != null ? session.hasher() : new Hasher();
+    }
+
+    /** Returns a new SHA-1 digest. */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE. */
+    String hash(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer chunk = buffer();
+            while (channel.read(chunk) >= 0) {
+                chunk.flip();
+                digest.update(chunk);
+                chunk.clear();
+            }
+            return Utils.toHex(digest.digest());
+        } catch (IOException excp) {
+            digest.reset();
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Copies SOURCE to TARGET and returns the SHA-1 hash of what was
+     *  copied. */
+    String copy(File source, File target) {
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.WRITE,
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer chunk = buffer();
+            while (in.read(chunk) >= 0) {
+                chunk.flip();
+                digest.update(chunk.duplicate());
+                while (chunk.hasRemaining()) {
+                    out.write(chunk);
+                }
+                chunk.clear();
+            }
+            return Utils.toHex(digest.digest());
+        } catch (IOException excp) {
+            digest.reset();
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the SHA-1 hash of the concatenation of VALS, which may be
+     *  any mixture of byte arrays and Strings. */
+    String hash(Object... vals) {
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                digest.update((byte[]) val);
+            } else if (val instanceof String) {
+                digest.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                digest.reset();
+                throw new IllegalArgumentException("improper type to sha1");
+            }
+        }
+        return Utils.toHex(digest.digest());
+    }
+
+    private ByteBuffer buffer() {
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+        buffer.clear();
+        return buffer;
+    }
+}
@@ -1,9 +1,15 @@
 package gitlet;
 
-import org.reflections.vfs.Vfs;
-
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author Rong
@@ -19,6 +25,22 @@ public class Main {
             System.out.println("Please enter a command.");
             return;
         }
+        // batch and cat-file read standard input, which a daemon cannot see.
+        if (!args[0].equals("daemon") && !args[0].equals("batch") && !args[0].equals("cat-file")
+            && Daemon.forward(args)) {
+            return;
+        }
+        // A session of its own keeps the packs the command opens for all its lookups.
+        try {
+            Session.run(new Session(), () -> run(args));
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    /** Runs the command named by ARGS[0], with the rest of ARGS as its
+     *  operands. ARGS must not be empty. */
+    static void run(String[] args) {
         String firstArg = args[0];
         switch(firstArg) {
             case "init":
@@ -29,14 +51,17 @@ public class Main {
                     System.out.println("Not in an initialized Gitlet directory.");
                     return;
                 }
-                add(args[1]);
+                if (args.length < 2) {
+                    throw Utils.error("Incorrect operands.");
+                }
+                add(Arrays.copyOfRange(args, 1, args.length));
                 break;
             case "commit":
                 if (!isInitialized()) {
                     System.out.println("Not in an initialized Gitlet directory.");
                     return;
                 }
-                commit(args[1]);
+                commit(args.length > 1 ? args[1] : "");
                 break;
             case "restore":
                 if (!isInitialized()) {
@@ -45,11 +70,10 @@ public class Main {
                 }
                 if (args.length == 3) {
                     restore(null, args[2]);
-                } else if (!args[2].equals("--")) {
-                    System.out.println("Incorrect operands.");
-                    return;
-                } else {
+                } else if (args.length == 4 && args[2].equals("--")) {
                     restore(args[1], args[3]);
+                } else {
+                    throw Utils.error("Incorrect operands.");
                 }
                 break;
             case "log":
@@ -57,14 +81,14 @@ public class Main {
                     System.out.println("Not in an initialized Gitlet directory.");
                     return;
                 }
-                log();
+                log(LogOptions.parse(args));
                 break;
             case "global-log":
                 if (!isInitialized()) {
                     System.out.println("Not in an initialized Gitlet directory.");
                     return;
                 }
-                globalLog();
+                globalLog(LogOptions.parse(args));
                 break;
             case "status":
                 if (!isInitialized()) {
@@ -78,6 +102,7 @@ public class Main {
                     System.out.println("Not in an initialized Gitlet directory.");
                     return;
                 }
+                checkOperands(args, 1);
                 rm(args[1]);
                 break;
             case "find":
@@ -85,13 +110,19 @@ public class Main {
                     System.out.println("Not in an initialized Gitlet directory.");
                     return;
                 }
-                find(args[1]);
+                if (args.length == 3 && args[1].equals("--grep")) {
+                    grep(args[2]);
+                } else {
+                    checkOperands(args, 1);
+                    find(args[1]);
+                }
                 break;
             case "branch":
                 if (!isInitialized()) {
                     System.out.println("Not in an initialized Gitlet directory.");
                     return;
                 }
+                checkOperands(args, 1);
                 branch(args[1]);
                 break;
             case "switch":
@@ -99,6 +130,7 @@ public class Main {
                     System.out.println("Not in an initialized Gitlet directory.");
                     return;
                 }
+                checkOperands(args, 1);
                 switchBranch(args[1]);
                 break;
             case "rm-branch":
@@ -106,6 +138,7 @@ public class Main {
                     System.out.println("Not in an initialized Gitlet directory.");
                     return;
                 }
+                checkOperands(args, 1);
                 rmBranch(args[1]);
                 break;
             case "reset":
@@ -113,14 +146,62 @@ public class Main {
                     System.out.println("Not in an initialized Gitlet directory.");
                     return;
                 }
+                checkOperands(args, 1);
                 reset(args[1]);
                 break;
+            case "gc":
+            case "repack":
+                if (!isInitialized()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                    return;
+                }
+                gc();
+                break;
+            case "verify":
+                if (!isInitialized()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                    return;
+                }
+                verify();
+                break;
+            case "diff":
+                if (!isInitialized()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                    return;
+                }
+                diff(Arrays.copyOfRange(args, 1, args.length));
+                break;
+            case "cat-file":
+                if (!isInitialized()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                    return;
+                }
+                CatFile.run(Arrays.copyOfRange(args, 1, args.length));
+                break;
+            case "batch":
+                Batch.run(Arrays.copyOfRange(args, 1, args.length));
+                break;
+            case "daemon":
+                if (!isInitialized()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                    return;
+                }
+                if (args.length == 1) {
+                    Daemon.serve();
+                } else if (args.length == 2 && args[1].equals("--stop")) {
+                    if (!Daemon.forward(args)) {
+                        System.out.println("No daemon is running.");
+                    }
+                } else {
+                    throw Utils.error("Incorrect operands.");
+                }
+                break;
             case "merge":
                 if (!isInitialized()) {
                     System.out.println("Not in an initialized Gitlet directory.");
                     return;
                 }
-                merge(args[1]);
+                merge(Arrays.copyOfRange(args, 1, args.length));
                 break;
             default:
                 System.out.println("No command with that name exists.");
@@ -128,6 +209,14 @@ public class Main {
         }
     }
 
+    /** Throws a GitletException unless ARGS is a command name followed by
+     *  exactly OPERANDS operands. */
+    private static void checkOperands(String[] args, int operands) {
+        if (args.length != operands + 1) {
+            throw Utils.error("Incorrect operands.");
+        }
+    }
+
     public static boolean isInitialized() {
         File gitletDir = new File(System.getProperty("user.dir"), ".gitlet");
         return gitletDir.exists() && gitletDir.isDirectory();
@@ -137,45 +226,107 @@ public class Main {
         File gitletDir = new File(Repository.CWD, ".gitlet");
         if (gitletDir.exists()) {
             System.out.println("A Gitlet version-control system already exists in the current directory.");
+            return;
         }
         gitletDir.mkdir();
-        Commit initCommit = new Commit("initial commit", null, "main");
-        CommitTree treeSystem = initCommit.getTree();
-        Utils.writeObject(new File(gitletDir, "commitTree"), treeSystem);
+        Commit initCommit = new Commit("initial commit", (String) null);
+        CommitTree treeSystem = new CommitTree("main", initCommit);
         treeSystem.save();
         StagingArea stagingArea = new StagingArea();
         stagingArea.save();
     }
 
-    public static void add(String fileName) {
+    /** Stages the files at PATHS, which are relative to the working
+     *  directory. A directory stands for every file under it, and "-A" for
+     *  the whole working directory; tracked files that have been deleted
+     *  from such a directory are staged for removal. The candidate files
+     *  are hashed in parallel and every resulting change reaches the
+     *  staging area in a single journal write. */
+    public static void add(String... paths) {
         CommitTree commitTree = CommitTree.load();
         StagingArea stagingArea = StagingArea.load();
-        Set<String> rmFiles = stagingArea.getRmFiles().keySet();
-        if (rmFiles.contains(fileName)) {
-            stagingArea.rmRmFiles(fileName);
+        Map<String, Blob> trackedFiles = commitTree.getMain().getBlobs();
+        Set<String> files = new TreeSet<>();
+        List<String> dirs = new ArrayList<>();
+        for (String path : paths) {
+            String relative = path.equals("-A") ? "" : relativePath(path);
+            if (relative == null || !new File(Repository.CWD, relative).exists()) {
+                System.out.println("File does not exist.");
+                return;
+            }
+            if (new File(Repository.CWD, relative).isDirectory()) {
+                dirs.add(relative.isEmpty() ? "" : relative + "/");
+                files.addAll(WorkTree.files(relative));
+            } else {
+                files.add(relative);
+            }
         }
-        File targetFile = new File(Repository.CWD, fileName);
-        if (!targetFile.exists()) {
-            System.out.println("File does not exist.");
-        } else {
-            if (stagingArea.contains(fileName)) {
-                stagingArea.remove(fileName);
+        Set<String> deletedFiles = new TreeSet<>();
+        for (String fileName : trackedFiles.keySet()) {
+            for (String dir : dirs) {
+                if (fileName.startsWith(dir) && !files.contains(fileName)
+                    && !new File(Repository.CWD, fileName).exists()) {
+                    deletedFiles.add(fileName);
+                }
+            }
+        }
+
+        WorkingIndex index = WorkingIndex.load();
+        Map<String, String> fileIds = WorkTree.hashAll(files, index);
+        index.save();
+        Map<String, String> toStore = new HashMap<>();
+        for (String fileName : files) {
+            String fileId = fileIds.get(fileName);
+            Blob currentBlob = trackedFiles.get(fileName);
+            Blob stagedBlob = stagingArea.getStagedFiles().get(fileName);
+            boolean unchanged = currentBlob != null && currentBlob.getId().equals(fileId);
+            if (!unchanged && (stagedBlob == null || !stagedBlob.getId().equals(fileId))) {
+                toStore.putIfAbsent(fileId, fileName);
+            }
+        }
+        Map<String, String> storedIds = new ConcurrentHashMap<>();
+        // The stream's threads have no session, so they share the packs of this one.
+        List<Pack> packs = ObjectStore.packs();
+        toStore.entrySet().parallelStream().forEach(entry -> storedIds.put(entry.getKey(),
+            Blob.fromFile(new File(Repository.CWD, entry.getValue()), entry.getKey(), index.hasher(), packs)
+                .getId()));
+
+        stagingArea.startBatch();
+        for (String fileName : files) {
+            String fileId = fileIds.get(fileName);
+            Blob currentBlob = trackedFiles.get(fileName);
+            if (stagingArea.getRmFiles().containsKey(fileName)) {
+                stagingArea.rmRmFiles(fileName);
             }
-            Commit currCommit = commitTree.getMain();
-            Blob currentBlob = currCommit.getBlob(fileName);
-            byte[] fileBytes = Utils.readContents(targetFile);
-            if (currentBlob != null && currentBlob.isEqualContent(fileBytes)) {
+            if (currentBlob != null && currentBlob.getId().equals(fileId)) {
                 // The file content is identical to the current commit, no need to stage
-                stagingArea.save();
-                return;
+                if (stagingArea.contains(fileName)) {
+                    stagingArea.remove(fileName);
+                }
+            } else if (storedIds.containsKey(fileId)) {
+                stagingArea.add(fileName, Blob.stored(storedIds.get(fileId), fileName));
             }
-            byte[] copyBytes = new byte[fileBytes.length];
-            System.arraycopy(fileBytes, 0, copyBytes, 0, fileBytes.length);
-            Blob newBlob = new Blob(copyBytes);
-            stagingArea.add(fileName, newBlob);
-            stagingArea.save();
-            commitTree.save();
         }
+        for (String fileName : deletedFiles) {
+            if (stagingArea.contains(fileName)) {
+                stagingArea.remove(fileName);
+            }
+            stagingArea.addRm(fileName, trackedFiles.get(fileName));
+        }
+        stagingArea.finishBatch();
+        stagingArea.save();
+    }
+
+    /** Returns PATH, taken relative to the working directory, as a
+     *  normalized '/'-separated path, which is empty for the working
+     *  directory itself, or null if PATH lies outside it. */
+    private static String relativePath(String path) {
+        Path root = Repository.CWD.toPath();
+        Path relative = root.relativize(root.resolve(path).normalize());
+        if (relative.startsWith("..")) {
+            return null;
+        }
+        return relative.toString().replace(File.separatorChar, '/');
     }
 
     public static void commit(String message) {
@@ -191,25 +342,24 @@ public class Main {
         CommitTree commitTree = CommitTree.load();
         Commit parentCommit = commitTree.getMain();
         Map<String, Blob> stagedFiles = stagingArea.getStagedFiles();
-        Commit newCommit = new Commit(message, parentCommit, parentCommit.getBranchName());
-        Map<String, Blob> parentBlobs = parentCommit.getBlobs();
-        for (Map.Entry<String, Blob> entry: parentBlobs.entrySet()) {
-            String fileName = entry.getKey();
-            Blob blob = entry.getValue();
-            File file = new File(Repository.CWD, fileName);
-            if (file.exists()) {
-                newCommit.addBlob(fileName, blob);
-            }
+        Commit newCommit = new Commit(message, parentCommit);
+        for (String fileName: stagingArea.getRmFiles().keySet()) {
+            newCommit.removeBlob(fileName);
         }
-        newCommit.getBlobs().putAll(parentCommit.getBlobs());
         for (Map.Entry<String, Blob> entry: stagedFiles.entrySet()) {
             String fileName = entry.getKey();
             Blob blob = entry.getValue();
             newCommit.addBlob(fileName, blob);
         }
+        // A merge made with --no-commit is completed by this commit.
+        if (Repository.MERGE_HEAD.isFile()) {
+            newCommit.addParent(commitTree.getCommit(Utils.readContentsAsString(Repository.MERGE_HEAD)));
+            Repository.MERGE_HEAD.delete();
+        }
         stagingArea.clear();
         stagingArea.save();
-        commitTree.setMain(newCommit.getBranchName(), newCommit);
+        commitTree.addCommit(newCommit);
+        commitTree.setMain(commitTree.getCurrentBranch(), newCommit);
         commitTree.save();
     }
 
@@ -235,60 +385,150 @@ public class Main {
 
         byte[] fileContent = fileBlob.getContent();
         File restoredFile = new File(Repository.CWD, fileName);
+        restoredFile.getParentFile().mkdirs();
         Utils.writeContents(restoredFile, fileContent);
     }
 
-    public static void log() {
-        CommitTree commitTree = CommitTree.load();
-        Commit commit = commitTree.getMain();
+    /** Options of log and global-log. */
+    static class LogOptions {
+        /** The most commits to show. */
+        private int limit = Integer.MAX_VALUE;
+        /** The number of matching commits to leave out first. */
+        private int skip;
+        /** True to show each commit on one line. */
+        private boolean oneline;
+        /** Show only commits that changed this path, if not null. */
+        private String path;
 
-        while (commit != null) {
-            System.out.println("===");
-            System.out.println("commit " + commit.getId());
+        /** Returns the options given in ARGS, which start with the name of
+         *  the command. The path, after "--", may come before or after the
+         *  other options. Throws a GitletException if they are malformed. */
+        static LogOptions parse(String[] args) {
+            LogOptions options = new LogOptions();
+            for (int i = 1; i < args.length; i += 1) {
+                switch (args[i]) {
+                    case "-n":
+                        i += 1;
+                        options.limit = count(args, i);
+                        break;
+                    case "--skip":
+                        i += 1;
+                        options.skip = count(args, i);
+                        break;
+                    case "--oneline":
+                        options.oneline = true;
+                        break;
+                    case "--":
+                        if (i + 1 >= args.length || options.path != null || !args[0].equals("log")) {
+                            throw Utils.error("Incorrect operands.");
+                        }
+                        i += 1;
+                        options.path = args[i];
+                        break;
+                    default:
+                        throw Utils.error("Incorrect operands.");
+                }
+            }
+            return options;
+        }
 
-            // Print merge commit information if applicable
-//            if (commit.getParents().size() > 1) {
-//                System.out.print("Merge: ");
-//                System.out.print(commit.getParents().get(0).getId().substring(0, 7) + " ");
-//                System.out.println(commit.getParents().get(1).getId().substring(0, 7));
-//            }
+        private static int count(String[] args, int i) {
+            try {
+                int count = Integer.parseInt(args[i]);
+                if (count >= 0) {
+                    return count;
+                }
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException excp) {
+                // Fall through to the error below.
+            }
+            throw Utils.error("Incorrect operands.");
+        }
+    }
 
-            System.out.println("Date: " + commit.getTimestamp());
-            System.out.println(commit.getMessage());
-            System.out.println();
+    /** Prints the first-parent history of the current branch as OPTIONS
+     *  ask. The history is walked over the rows of the commit graph and a
+     *  commit is only read if it is printed, so the cost of "-n" does not
+     *  depend on the length of the history. With a path, commits whose
+     *  changed-path filter rules the path out are skipped without reading
+     *  their trees. */
+    public static void log(LogOptions options) {
+        CommitTree commitTree = CommitTree.load();
+        CommitGraph graph = CommitGraph.open();
+        String path = null;
+        if (options.path != null) {
+            path = relativePath(options.path);
+            if (path == null) {
+                throw Utils.error("Path is outside the repository.");
+            }
+        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+        int skipped = 0;
+        int shown = 0;
+        for (int row = graph.rowOf(commitTree.getMain().getId());
+             row >= 0 && shown < options.limit; row = graph.parent1(row)) {
+            if (path != null && !path.isEmpty() && !changes(graph, row, path)) {
+                continue;
+            }
+            if (skipped < options.skip) {
+                skipped += 1;
+                continue;
+            }
+            printLogEntry(out, Commit.load(graph.idAt(row)), options.oneline);
+            shown += 1;
+        }
+        out.flush();
+    }
 
-            commit = commit.getParent();
+    /** Returns true iff the commit at ROW of GRAPH changed PATH compared to
+     *  its first parent. */
+    private static boolean changes(CommitGraph graph, int row, String path) {
+        if (!graph.mayHaveChanged(row, path)) {
+            return false;
         }
+        int parent = graph.parent1(row);
+        return !Objects.equals(Tree.entryId(graph.treeAt(row), path),
+                               parent < 0 ? null : Tree.entryId(graph.treeAt(parent), path));
     }
 
-    public static void globalLog() {
-        CommitTree commitTree = CommitTree.load();
-        Map<String, Commit> commits = commitTree.getCommits();
+    /** Prints every commit ever made, oldest first, as OPTIONS ask. Commits
+     *  are read one at a time as they are printed. */
+    public static void globalLog(LogOptions options) {
+        CommitGraph graph = CommitGraph.open();
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+        int end = (int) Math.min(graph.size(), (long) options.skip + options.limit);
+        for (int row = options.skip; row < end; row += 1) {
+            printLogEntry(out, Commit.load(graph.idAt(row)), options.oneline);
+        }
+        out.flush();
+    }
 
-        for (Commit commit: commits.values()) {
-            System.out.println("===");
-            System.out.println("commit " + commit.getId());
+    /** Prints the log entry of COMMIT to OUT, on one line if ONELINE. */
+    private static void printLogEntry(PrintWriter out, Commit commit, boolean oneline) {
+        if (oneline) {
+            out.println(commit.getId().substring(0, 7) + " " + commit.getMessage());
+            return;
+        }
+        out.println("===");
+        out.println("commit " + commit.getId());
 
-            // Print merge commit information if applicable
+        // Print merge commit information if applicable
 //            if (commit.getParents().size() > 1) {
 //                System.out.print("Merge: ");
 //                System.out.print(commit.getParents().get(0).getId().substring(0, 7) + " ");
 //                System.out.println(commit.getParents().get(1).getId().substring(0, 7));
 //            }
 
-            System.out.println("Date: " + commit.getTimestamp());
-            System.out.println(commit.getMessage());
-            System.out.println();
-        }
+        out.println("Date: " + commit.getTimestamp());
+        out.println(commit.getMessage());
+        out.println();
     }
 
     public static void status() {
         CommitTree commitTree = CommitTree.load();
-        Commit currMain = commitTree.getMain();
-        Map<String, Commit> branches = commitTree.getBranches();
+        Map<String, String> branches = commitTree.getBranches();
         System.out.println("=== Branches ===");
         for (String branchName: branches.keySet()) {
-            if (branchName.equals(currMain.getBranchName())) {
+            if (branchName.equals(commitTree.getCurrentBranch())) {
                 System.out.println("*"+branchName);
             } else {
                 System.out.println(branchName);
@@ -309,9 +549,49 @@ public class Main {
             System.out.println(fileName);
         }
         System.out.println();
+        // Only files that are tracked or staged need to be hashed; anything else in the working directory is untracked.
+        Map<String, Blob> trackedFiles = commitTree.getMain().getBlobs();
+        Set<String> workingFiles = new TreeSet<>(WorkTree.files());
+        Set<String> candidates = new HashSet<>();
+        for (String fileName: workingFiles) {
+            if (trackedFiles.containsKey(fileName) || stagedFiles.containsKey(fileName)) {
+                candidates.add(fileName);
+            }
+        }
+        WorkingIndex index = WorkingIndex.load();
+        Map<String, String> workingIds = WorkTree.hashAll(candidates, index);
+        index.save();
+        Map<String, String> modifications = new TreeMap<>();
+        for (Map.Entry<String, Blob> entry: trackedFiles.entrySet()) {
+            String fileName = entry.getKey();
+            if (stagedFiles.containsKey(fileName) || rmFiles.contains(fileName)) {
+                continue;
+            }
+            if (!workingFiles.contains(fileName)) {
+                modifications.put(fileName, "deleted");
+            } else if (!entry.getValue().getId().equals(workingIds.get(fileName))) {
+                modifications.put(fileName, "modified");
+            }
+        }
+        for (Map.Entry<String, Blob> entry: stagedFiles.entrySet()) {
+            String fileName = entry.getKey();
+            if (!workingFiles.contains(fileName)) {
+                modifications.put(fileName, "deleted");
+            } else if (!entry.getValue().getId().equals(workingIds.get(fileName))) {
+                modifications.put(fileName, "modified");
+            }
+        }
         System.out.println("=== Modifications Not Staged For Commit ===");
+        for (Map.Entry<String, String> entry: modifications.entrySet()) {
+            System.out.println(entry.getKey() + " (" + entry.getValue() + ")");
+        }
         System.out.println();
         System.out.println("=== Untracked Files ===");
+        for (String fileName: workingFiles) {
+            if (!stagedFiles.containsKey(fileName) && (!trackedFiles.containsKey(fileName) || rmFiles.contains(fileName))) {
+                System.out.println(fileName);
+            }
+        }
         System.out.println();
     }
 
@@ -320,7 +600,6 @@ public class Main {
         Map<String, Blob> stagedFiles = stagingArea.getStagedFiles();
         CommitTree commitTree = CommitTree.load();
         Commit currCommit = commitTree.getMain();
-        commitTree.addRmFile(currCommit.getBranchName(), fileName);
         Map<String, Blob> currBlobs = currCommit.getBlobs();
         // Check if the file is currently staged for addition, and unstage it if it is.
         if (stagedFiles.containsKey(fileName)) {
@@ -338,30 +617,214 @@ public class Main {
         }
         // Print an error message if the file is neither staged nor tracked by the head commit.
         else {
-            commitTree.rmRmFile(currCommit.getBranchName(), fileName);
             System.out.println("No reason to remove the file.");
         }
     }
 
+    /** Prints the ids of the commits whose message is COMMITMESSAGE, looked
+     *  up in the message index, so only the matches are read. The index is
+     *  rebuilt with the commit graph if it is out of date. */
     public static void find(String commitMessage) {
-        List<String> commitList = Utils.plainFilenamesIn(".gitlet/commit");
-        CommitTree commitTree = CommitTree.load();
-        boolean commitExist = false;
-        for (String commitId: commitList) {
-            Commit commit = commitTree.findCommit(commitId);
-            if (commit.getMessage().equals(commitMessage)) {
-                commitExist = true;
-                System.out.println(commitId);
+        CommitGraph.ensureCurrent();
+        List<String> ids = MessageIndex.find(commitMessage);
+        if (ids.isEmpty()) {
+            System.out.println("Found no commit with that message.");
+            return;
+        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+        for (String commitId : ids) {
+            out.println(commitId);
+        }
+        out.flush();
+    }
+
+    /** Prints the ids of the commits whose message contains a match for
+     *  the regular expression REGEX, oldest first. Messages are scanned in
+     *  the message column, without reading any commit. */
+    public static void grep(String regex) {
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException excp) {
+            System.out.println("Invalid pattern.");
+            return;
+        }
+        CommitGraph graph = CommitGraph.open();
+        MappedByteBuffer messages = MessageIndex.column();
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+        boolean found = false;
+        for (int row = 0; row < graph.size(); row += 1) {
+            if (pattern.matcher(MessageIndex.messageAt(messages, graph.messageOffset(row))).find()) {
+                out.println(graph.idAt(row));
+                found = true;
             }
         }
-        if (!commitExist) {
-            System.out.println("Found no commit with that message.");
+        if (!found) {
+            out.println("Found no commit with that message.");
+        }
+        out.flush();
+    }
+
+    /** Packs all loose objects and existing packs into a single pack. */
+    public static void gc() {
+        ObjectStore.repack();
+    }
+
+    /** Recomputes the id of every stored commit and of every tree and blob
+     *  they refer to, and reports any object that is missing or whose
+     *  contents no longer match its id. */
+    public static void verify() {
+        Hasher hasher = new Hasher();
+        Set<String> checkedTrees = new HashSet<>();
+        Set<String> checkedBlobs = new HashSet<>();
+        for (String commitId : CommitIndex.ids()) {
+            Commit commit;
+            try {
+                commit = Commit.load(commitId);
+            } catch (IllegalArgumentException excp) {
+                System.out.println("Corrupt commit " + commitId + ".");
+                continue;
+            }
+            if (commit == null) {
+                System.out.println("Missing commit " + commitId + ".");
+                continue;
+            }
+            if (!commit.computeId(hasher).equals(commitId)) {
+                System.out.println("Corrupt commit " + commitId + ".");
+            }
+            verifyTree(commit.getTreeId(), checkedTrees, checkedBlobs, hasher);
+        }
+    }
+
+    /** Checks the tree TREEID and everything under it that is not in
+     *  CHECKEDTREES or CHECKEDBLOBS, adding what it checks to those sets.
+     *  Ids are recomputed with HASHER. */
+    private static void verifyTree(String treeId, Set<String> checkedTrees, Set<String> checkedBlobs,
+                                   Hasher hasher) {
+        if (!checkedTrees.add(treeId)) {
+            return;
+        }
+        byte[] listing = ObjectStore.read(treeId, ObjectStore.TREE);
+        if (listing == null) {
+            System.out.println("Missing tree " + treeId + ".");
+            return;
+        }
+        if (!hasher.hash(listing).equals(treeId)) {
+            System.out.println("Corrupt tree " + treeId + ".");
+            return;
+        }
+        Tree tree = Tree.read(treeId);
+        for (String subtreeId : tree.subtreeIds()) {
+            verifyTree(subtreeId, checkedTrees, checkedBlobs, hasher);
+        }
+        for (String blobId : tree.blobIds()) {
+            if (!checkedBlobs.add(blobId)) {
+                continue;
+            }
+            byte[] content = ObjectStore.read(blobId, ObjectStore.BLOB);
+            if (content == null) {
+                System.out.println("Missing blob " + blobId + ".");
+            } else if (!hasher.hash(content).equals(blobId)) {
+                System.out.println("Corrupt blob " + blobId + ".");
+            }
+        }
+    }
+
+    /** Prints, as unified diffs, the changes OPERANDS ask for: from the
+     *  index (the head commit with the staging area applied) to the working
+     *  directory with no operands, from the head commit to the index with
+     *  --cached, and from one commit to another given their ids. */
+    public static void diff(String... operands) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+        if (operands.length == 0) {
+            diffWorking(out);
+        } else if (operands.length == 1 && operands[0].equals("--cached")) {
+            diffCached(out);
+        } else if (operands.length == 2) {
+            CommitTree commitTree = CommitTree.load();
+            Commit from = commitTree.findCommit(operands[0]);
+            Commit to = commitTree.findCommit(operands[1]);
+            if (from == null || to == null) {
+                throw Utils.error("No commit with that id exists.");
+            }
+            // Identical subtrees and files are skipped by id, without being read.
+            Map<String, String> changes = Tree.diff(from.getTreeId(), to.getTreeId());
+            Map<String, String> previous = Tree.diff(to.getTreeId(), from.getTreeId());
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                String fileName = change.getKey();
+                Diff.print(out, fileName, content(previous.get(fileName), fileName),
+                           content(change.getValue(), fileName));
+            }
+        } else {
+            throw Utils.error("Incorrect operands.");
+        }
+        out.flush();
+    }
+
+    /** Prints to OUT the diff from the index to the working directory, for
+     *  every file in the index. */
+    private static void diffWorking(PrintWriter out) {
+        Map<String, String> indexed = indexedFiles(StagingArea.load(), CommitTree.load().getMain());
+        Set<String> present = new HashSet<>();
+        for (String fileName : indexed.keySet()) {
+            if (new File(Repository.CWD, fileName).isFile()) {
+                present.add(fileName);
+            }
+        }
+        WorkingIndex index = WorkingIndex.load();
+        Map<String, String> workingIds = WorkTree.hashAll(present, index);
+        index.save();
+        for (Map.Entry<String, String> entry : indexed.entrySet()) {
+            String fileName = entry.getKey();
+            if (!present.contains(fileName)) {
+                Diff.print(out, fileName, content(entry.getValue(), fileName), null);
+            } else if (!entry.getValue().equals(workingIds.get(fileName))) {
+                Diff.print(out, fileName, content(entry.getValue(), fileName),
+                           Utils.readContents(new File(Repository.CWD, fileName)));
+            }
+        }
+    }
+
+    /** Prints to OUT the diff from the head commit to the index. */
+    private static void diffCached(PrintWriter out) {
+        StagingArea stagingArea = StagingArea.load();
+        Commit head = CommitTree.load().getMain();
+        Map<String, String> indexed = indexedFiles(stagingArea, head);
+        Set<String> fileNames = new TreeSet<>(stagingArea.getStagedFiles().keySet());
+        fileNames.addAll(stagingArea.getRmFiles().keySet());
+        for (String fileName : fileNames) {
+            Blob before = head.getBlob(fileName);
+            String after = indexed.get(fileName);
+            if (before == null || !before.getId().equals(after)) {
+                Diff.print(out, fileName, before == null ? null : before.getContent(),
+                           content(after, fileName));
+            }
         }
     }
 
+    /** Returns the blob id of every file in the index, by path: the files of
+     *  HEAD with the changes in STAGINGAREA applied. */
+    private static Map<String, String> indexedFiles(StagingArea stagingArea, Commit head) {
+        Map<String, String> indexed = new TreeMap<>();
+        for (Map.Entry<String, Blob> entry : head.getBlobs().entrySet()) {
+            indexed.put(entry.getKey(), entry.getValue().getId());
+        }
+        for (Map.Entry<String, Blob> entry : stagingArea.getStagedFiles().entrySet()) {
+            indexed.put(entry.getKey(), entry.getValue().getId());
+        }
+        indexed.keySet().removeAll(stagingArea.getRmFiles().keySet());
+        return indexed;
+    }
+
+    /** Returns the content of blob ID, stored for FILENAME, or null if ID is
+     *  null. */
+    private static byte[] content(String id, String fileName) {
+        return id == null ? null : Blob.stored(id, fileName).getContent();
+    }
+
     public static void branch(String branchName) {
         CommitTree commitTree = CommitTree.load();
-        Map<String, Commit> currBranches = commitTree.getBranches();
+        Map<String, String> currBranches = commitTree.getBranches();
         if (currBranches.containsKey(branchName)) {
             System.out.println("A branch with that name already exists.");
             return;
@@ -375,43 +838,23 @@ public class Main {
         StagingArea stagingArea = StagingArea.load();
         CommitTree commitTree = CommitTree.load();
         Commit currMain = commitTree.getMain();
-        Map<String, Commit> currBranches = commitTree.getBranches();
+        Map<String, String> currBranches = commitTree.getBranches();
         // Check if the branch with the given branchName exists.
         if (!currBranches.containsKey(branchName)) {
             System.out.println("No such branch exists.");
             return;
         }
-        Commit newMain = currBranches.get(branchName);
+        Commit newMain = commitTree.getBranch(branchName);
         // Check if that branch is the current branch.
-        if (branchName.equals(currMain.getBranchName())) {
+        if (branchName.equals(commitTree.getCurrentBranch())) {
             System.out.println("No need to switch to the current branch.");
             return;
         }
-        // Check if a working file in the branch to be switched to is untracked in the current branch.
-        Map<String, Blob> newMainBlobs = newMain.getBlobs();
-        Map<String, Blob> currMainBlobs = currMain.getBlobs();
-        for (String fileName: newMainBlobs.keySet()) {
-            File overwrittenFile = new File(Repository.CWD, fileName);
-            Blob b = newMainBlobs.get(fileName);
-            if (overwrittenFile.isFile() && b != null && !b.isEqualContent(Utils.readContents(overwrittenFile)) && !currMainBlobs.containsKey(fileName)) {
-                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                return;
-            }
-        }
-        // Takes all files in the commit at the head of the given branch, and puts them in the working directory, overwriting the versions of the files that are already there if they exist.
-        for (String fileName: newMainBlobs.keySet()) {
-            Blob b = newMainBlobs.get(fileName);
-            File overwrittenFile = new File(Repository.CWD, fileName);
-            Utils.writeContents(overwrittenFile, (Object) b.getContent());
-        }
-        // Delete any files that are tracked in the current branch but are not present in the checked-out branch.
-        for (String fileName: currMainBlobs.keySet()) {
-            Set<String> rmFiles = commitTree.getRmFiles().get(branchName);
-            if (!newMainBlobs.containsKey(fileName) || rmFiles != null && rmFiles.contains(fileName)) {
-                File deletedFile = new File(Repository.CWD, fileName);
-                deletedFile.delete();
-            }
-        }
+        // Write and delete only the files that differ between the two commits, or that are missing or modified.
+        WorkingIndex index = WorkingIndex.load();
+        Checkout.apply(Checkout.plan(currMain, newMain, index), index);
+        index.save();
+        Repository.MERGE_HEAD.delete();
         commitTree.setMain(branchName, newMain);
         commitTree.save();
         stagingArea.clear();
@@ -420,17 +863,16 @@ public class Main {
 
     public static void rmBranch(String branchName) {
         CommitTree commitTree = CommitTree.load();
-        Map<String, Commit> currBranches = commitTree.getBranches();
+        Map<String, String> currBranches = commitTree.getBranches();
         // Check if a branch with the given name exists.
         if (!currBranches.containsKey(branchName)) {
             System.out.println("A branch with that name does not exist.");
             return;
         }
         // Check if the branch to be removed is the current branch.
-        Commit currMain = commitTree.getMain();
-        Commit removedBranch = currBranches.get(branchName);
-        if (currMain.equals(removedBranch)) {
+        if (branchName.equals(commitTree.getCurrentBranch())) {
             System.out.println("Cannot remove the current branch.");
+            return;
         }
         // Delete the branch (pointer to the Commit) with the given name.
         currBranches.remove(branchName);
@@ -439,7 +881,6 @@ public class Main {
 
     public static void reset(String commitId) {
         StagingArea stagingArea = StagingArea.load();
-        Map<String, Blob> stagedFiles = stagingArea.getStagedFiles();
         CommitTree commitTree = CommitTree.load();
         // Check if the commit with the given commitId exists.
         Commit targetCommit = commitTree.findCommit(commitId);
@@ -447,35 +888,42 @@ public class Main {
             System.out.println("No commit with that id exists.");
             return;
         }
-        // Check if a working file is untracked in the current branch and would be overwritten by the reset.
-        Map<String, Blob> targetBlobs = targetCommit.getBlobs();
-        Commit currMain = commitTree.getMain();
-        Map<String, Blob> mainBlobs = currMain.getBlobs();
-        for (String blobName : targetBlobs.keySet()) {
-            File file = new File(Repository.CWD, blobName);
-            Blob b = targetBlobs.get(blobName);
-            if (file.isFile() && b != null && !b.isEqualContent(Utils.readContents(file)) && !mainBlobs.containsKey(blobName)) {
-                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                return;
-            }
-        }
-        // Restore all the files tracked by the given commit.
-        for (String blobName : targetBlobs.keySet()) {
-            restore(commitId, blobName);
-        }
-        for (String fileName : stagedFiles.keySet()) {
-            if (!targetBlobs.containsKey(fileName)) {
-                rm(fileName);
-            }
-        }
+        // Bring the working directory to the given commit, touching only the files that differ.
+        WorkingIndex index = WorkingIndex.load();
+        Checkout.apply(Checkout.plan(commitTree.getMain(), targetCommit, index), index);
+        index.save();
+        Repository.MERGE_HEAD.delete();
         // Move the current branch’s head to that commit node.
-        commitTree.setMain(commitTree.getMain().getBranchName(), targetCommit);
+        commitTree.setMain(commitTree.getCurrentBranch(), targetCommit);
         commitTree.save();
         stagingArea.clear();
         stagingArea.save();
     }
 
-    public static void merge(String branchName) {
+    /** Merges the branch named in OPERANDS into the current branch. The
+     *  result is worked out in memory first; then the working directory is
+     *  updated in one pass and the merge is committed. With --no-commit,
+     *  the result is staged instead and the next commit records the given
+     *  branch as its second parent. With --dry-run, the changes the merge
+     *  would make are printed and nothing is written. */
+    public static void merge(String... operands) {
+        boolean commit = true;
+        boolean dryRun = false;
+        String branchName = null;
+        for (String operand : operands) {
+            if (operand.equals("--no-commit")) {
+                commit = false;
+            } else if (operand.equals("--dry-run")) {
+                dryRun = true;
+            } else if (branchName == null) {
+                branchName = operand;
+            } else {
+                throw Utils.error("Incorrect operands.");
+            }
+        }
+        if (branchName == null) {
+            throw Utils.error("Incorrect operands.");
+        }
         StagingArea stagingArea = StagingArea.load();
         CommitTree commitTree = CommitTree.load();
         Commit mainBranch = commitTree.getMain();
@@ -483,221 +931,110 @@ public class Main {
             System.out.println("A branch with that name does not exist.");
             return;
         }
-        if (!stagingArea.getStagedFiles().isEmpty()) {
+        if (!stagingArea.getStagedFiles().isEmpty() || !stagingArea.getRmFiles().isEmpty()) {
             System.out.println("You have uncommitted changes.");
             return;
         }
-        Commit givenBranch = commitTree.getBranches().get(branchName);
-        Map<String, Blob> mainBlobs = mainBranch.getBlobs();
-        Map<String, Blob> givenBlobs = givenBranch.getBlobs();
-        for (String fileName: givenBlobs.keySet()) {
-            File overwrittenFile = new File(Repository.CWD, fileName);
-            Blob b = givenBlobs.get(fileName);
-            if (overwrittenFile.isFile() && b != null && !b.isEqualContent(Utils.readContents(overwrittenFile)) && !mainBlobs.containsKey(fileName)) {
-                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                return;
-            }
-        }
-        Commit splitPoint = findSplitPoint(branchName, mainBranch);
-        if (mainBranch.equals(givenBranch)) {
+        Commit givenBranch = commitTree.getBranch(branchName);
+        if (mainBranch.getId().equals(givenBranch.getId())) {
             System.out.println("Cannot merge a branch with itself.");
             return;
         }
+        Commit splitPoint = commitTree.mergeBase(mainBranch, givenBranch);
         // Check if the split point is the same commit as the given branch.
-        if (splitPoint.equals(givenBranch)) {
+        if (splitPoint.getId().equals(givenBranch.getId())) {
             System.out.println("Given branch is an ancestor of the current branch.");
             return;
         }
         // Check if the split point is the current branch.
-        if (splitPoint.equals(mainBranch)) {
+        if (splitPoint.getId().equals(mainBranch.getId())) {
+            if (dryRun) {
+                System.out.println("Current branch would be fast-forwarded.");
+                return;
+            }
             System.out.println("Current branch fast-forwarded.");
             switchBranch(branchName);
             return;
         }
-        Map<String, Blob> spBlobs = splitPoint.getBlobs();
-        for (String fileName: mainBlobs.keySet()) {
-            stagingArea.add(fileName, mainBlobs.get(fileName));
-            if (commitTree.getRmFiles().get(mainBranch.getBranchName()) != null && commitTree.getRmFiles().get(mainBranch.getBranchName()).contains(fileName)) {
-                stagingArea.remove(fileName);
-                File rmFile = new File(Repository.CWD, fileName);
-                if (rmFile.exists()) {
-                    rmFile.delete();
-                }
-            }
-            if (commitTree.getRmFiles().get(branchName) != null && commitTree.getRmFiles().get(branchName).contains(fileName)) {
-                File rmFile = new File(Repository.CWD, fileName);
-                if (rmFile.exists()) {
-                    rmFile.delete();
-                }
+        Merge result = Merge.compute(splitPoint, mainBranch, givenBranch);
+        // Check that no untracked file would be overwritten by the merge.
+        WorkingIndex index = WorkingIndex.load();
+        Set<String> written = new TreeSet<>(result.getMerged());
+        for (Map.Entry<String, String> entry : result.getTaken().entrySet()) {
+            if (entry.getValue() != null) {
+                written.add(entry.getKey());
             }
         }
-        for (String fileName: givenBlobs.keySet()) {
-            Blob givenBlob = givenBlobs.get(fileName);
-            // Any files that were not present at the split point and are present only in the given branch should be checked out and staged.
-            if (!spBlobs.containsKey(fileName) && !mainBlobs.containsKey(fileName)) {
-                stagingArea.add(fileName, givenBlob);
-                restore(givenBranch.getId(), fileName);
-            }
-            if (spBlobs.containsKey(fileName) && mainBlobs.containsKey(fileName)) {
-                Blob mainBlob = mainBlobs.get(fileName);
-                Blob spBlob = spBlobs.get(fileName);
-                // Any files that have been modified in the given branch since the split point, but not modified in the current branch since the split point should be changed to their versions in the given branch, then all be automatically staged.
-                if (!givenBlob.isEqualContent(spBlob.getContent()) && mainBlob.isEqualContent(spBlob.getContent())) {
-                    restore(givenBranch.getId(), fileName);
-                }
-                if (commitTree.getRmFiles().get(branchName) != null && commitTree.getRmFiles().get(branchName).contains(fileName)) {
-                    stagingArea.remove(fileName);
-                    File rmFile = new File(Repository.CWD, fileName);
-                    if (rmFile.exists()) {
-                        rmFile.delete();
-                    }
-                }
-            }
-        }
-        for (String fileName: spBlobs.keySet()) {
-            if (!givenBlobs.containsKey(fileName) && mainBlobs.containsKey(fileName)) {
-                Blob mainBlob = mainBlobs.get(fileName);
-                Blob spBlob = spBlobs.get(fileName);
-                if (mainBlob.isEqualContent(spBlob.getContent())) {
-                    rm(fileName);
-                }
+        Set<String> deleted = new HashSet<>();
+        for (Map.Entry<String, String> entry : result.getTaken().entrySet()) {
+            if (entry.getValue() == null) {
+                deleted.add(entry.getKey());
             }
         }
-        boolean conflict = false;
-        Set<String> fileNames = fileSet(givenBlobs, mainBlobs);
-        for (String fileName: fileNames) {
-            conflict = isInConflict(givenBlobs, mainBlobs, spBlobs, fileName);
-        }
-        String commitMessage = "Merged " + branchName + " into " + mainBranch.getBranchName() + ".";
-        mergeCommit(commitMessage, branchName);
-        if (conflict) {
-            System.out.println("Encountered a merge conflict.");
-        }
-
-    }
-
-    public static void mergeCommit(String message, String branchName) {
-        StagingArea stagingArea = StagingArea.load();
-        CommitTree commitTree = CommitTree.load();
-        Commit parentCommit = commitTree.getMain();
-        Commit givenCommit = commitTree.getBranches().get(branchName);
-        Map<String, Blob> stagedFiles = stagingArea.getStagedFiles();
-        Commit newCommit = new Commit(message, parentCommit, parentCommit.getBranchName());
-        newCommit.addParent(givenCommit);
-        for (Map.Entry<String, Blob> entry: stagedFiles.entrySet()) {
-            String fileName = entry.getKey();
-            Blob blob = entry.getValue();
-            newCommit.addBlob(fileName, blob);
-        }
-        stagingArea.clear();
-        stagingArea.save();
-        commitTree.setMain(newCommit.getBranchName(), newCommit);
-        commitTree.save();
-    }
-
-    public static Set<String> fileSet(Map<String, Blob> givenBlobs, Map<String, Blob> mainBlobs) {
-        Set<String> fileNames = new TreeSet<>(givenBlobs.keySet());
-        for (String fileName: mainBlobs.keySet()) {
-            if (!fileNames.contains(fileName)) {
-                fileNames.add(fileName);
-            }
-        }
-        return fileNames;
-    }
-
-    public static boolean isInConflict(Map<String, Blob> givenBlobs, Map<String, Blob> mainBlobs, Map<String, Blob> spBlobs, String fileName) {
-        boolean conflict = false;
-        // Contents of both branches are changed from the split point and differ from each other.
-        File file = new File(Repository.CWD, fileName);
-        if (file.exists() && givenBlobs.containsKey(fileName) && mainBlobs.containsKey(fileName) && spBlobs.containsKey(fileName)) {
-            Blob mainBlob = mainBlobs.get(fileName);
-            Blob givenBlob = givenBlobs.get(fileName);
-            Blob spBlob = spBlobs.get(fileName);
-            if (!givenBlob.isEqualContent(spBlob.getContent()) && !mainBlob.isEqualContent(spBlob.getContent()) && !givenBlob.isEqualContent(mainBlob.getContent())) {
-                conflict = true;
-                treatConflict(mainBlob, givenBlob, fileName);
-            }
-        }
-        // File was absent at the split point and has different contents in the given and current branches.
-        else if (file.exists() && !spBlobs.containsKey(fileName) && givenBlobs.containsKey(fileName) && mainBlobs.containsKey(fileName)) {
-            Blob mainBlob = mainBlobs.get(fileName);
-            Blob givenBlob = givenBlobs.get(fileName);
-            if (!givenBlob.isEqualContent(mainBlob.getContent())) {
-                conflict = true;
-                treatConflict(mainBlob, givenBlob, fileName);
+        for (String fileName : written) {
+            File file = new File(Repository.CWD, fileName);
+            if (file.isFile() && Tree.entryId(mainBranch.getTreeId(), fileName) == null
+                && !Objects.equals(result.getTaken().get(fileName), index.hash(fileName, file))) {
+                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
+                return;
             }
         }
-        // The contents of file in the given branch are changed and the one in main branch is deleted.
-        else if (!file.exists() && !mainBlobs.containsKey(fileName) && givenBlobs.containsKey(fileName) && spBlobs.containsKey(fileName) ) {
-            Blob spBlob = spBlobs.get(fileName);
-            Blob givenBlob = givenBlobs.get(fileName);
-            if (!givenBlob.isEqualContent(spBlob.getContent())) {
-                conflict = true;
-                treatConflict(null, givenBlob, fileName);
-            }
+        Checkout.checkInTheWay(written, deleted);
+        if (dryRun) {
+            printMerge(result);
+            return;
         }
-        // The contents of file in main branch are changed and the one in the given branch is deleted,
-        else if (!file.exists() && spBlobs.containsKey(fileName)) {
-            Blob spBlob = spBlobs.get(fileName);
-            Blob mainBlob = mainBlobs.get(fileName);
-            if (!mainBlob.isEqualContent(spBlob.getContent())) {
-                conflict = true;
-                treatConflict(mainBlob, null, fileName);
+        Map<String, String> changes = result.store();
+        Checkout.apply(changes, index);
+        index.save();
+        if (commit) {
+            String message = "Merged " + branchName + " into " + commitTree.getCurrentBranch() + ".";
+            Commit newCommit = new Commit(message, mainBranch);
+            newCommit.addParent(givenBranch);
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    newCommit.removeBlob(change.getKey());
+                } else {
+                    newCommit.addBlob(change.getKey(), Blob.stored(change.getValue(), change.getKey()));
+                }
             }
-        }
-        return conflict;
-    }
-
-    public static boolean mainChanged(File file, String fileName, Map<String, Blob> mainBlobs, Map<String, Blob> spBlobs) {
-        if (file.exists() && mainBlobs.containsKey(fileName)) {
-            if (spBlobs.containsKey(fileName)) {
-                Blob spBlob = spBlobs.get(fileName);
-                Blob mainBlob = mainBlobs.get(fileName);
-                if (!spBlob.isEqualContent(mainBlob.getContent())) {
-                    return true;
+            commitTree.addCommit(newCommit);
+            commitTree.setMain(commitTree.getCurrentBranch(), newCommit);
+            commitTree.save();
+        } else {
+            stagingArea.startBatch();
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                String fileName = change.getKey();
+                if (change.getValue() == null) {
+                    stagingArea.addRm(fileName, Blob.stored(Tree.entryId(mainBranch.getTreeId(), fileName), fileName));
+                } else {
+                    stagingArea.add(fileName, Blob.stored(change.getValue(), fileName));
                 }
-            } else {
-                return true;
             }
+            stagingArea.finishBatch();
+            stagingArea.save();
+            Utils.writeContents(Repository.MERGE_HEAD, givenBranch.getId());
         }
-        return false;
-    }
-
-    public static void treatConflict(Blob blob1, Blob blob2, String fileName) {
-        StagingArea stagingArea = StagingArea.load();
-        String content1 = "";
-        String content2 = "";
-        if (blob1 != null) {
-            content1 += new String(blob1.getContent());
-        }
-        if (blob2 != null) {
-            content2 = new String(blob2.getContent());
+        if (!result.getConflicts().isEmpty()) {
+            System.out.println("Encountered a merge conflict.");
         }
-        String newContent = "<<<<<<< HEAD\n" + content1 + "=======\n" + content2 + ">>>>>>>\n";
-        File newFile = new File(Repository.CWD, fileName);
-        byte[] newBytes = newContent.getBytes();
-        Utils.writeContents(newFile, newBytes);
-        Blob newblob = new Blob(newBytes);
-        stagingArea.add(fileName, newblob);
-        System.out.println("Encountered a merge conflict.");
     }
 
-    public static Commit findSplitPoint(String branchName, Commit mainBranch) {
-        CommitTree commitTree = CommitTree.load();
-        Commit givenBranch = commitTree.getBranches().get(branchName);
-        while ((givenBranch.getParent() != null)) {
-            if (givenBranch.getParent().getId().equals(mainBranch.getId())) {
-                return mainBranch;
-            }
-            givenBranch = givenBranch.getParent();
+    /** Prints the changes RESULT would make to the current branch, one file
+     *  per line, in order of path. */
+    private static void printMerge(Merge result) {
+        Map<String, String> lines = new TreeMap<>();
+        for (Map.Entry<String, String> entry : result.getTaken().entrySet()) {
+            lines.put(entry.getKey(), (entry.getValue() == null ? "remove " : "update ") + entry.getKey());
         }
-        givenBranch = commitTree.getBranches().get(branchName);
-        if ((mainBranch.getParent() != null) && (mainBranch.getParent().getParent() == null) && givenBranch.getParent() != null && mainBranch.getParent().getId().equals(givenBranch.getParent().getId())) {
-            return mainBranch.getParent();
+        for (String fileName : result.getMerged()) {
+            lines.put(fileName, (result.getConflicts().contains(fileName) ? "conflict " : "merge ") + fileName);
         }
-        while ((mainBranch.getParent() != null) && (!mainBranch.getParent().getBlobs().isEmpty()) && (!mainBranch.getId().equals(givenBranch.getId()) || mainBranch.numberOfChildren() < 2 || !mainBranch.getChildren().containsKey(givenBranch))) {
-            mainBranch = mainBranch.getParent();
+        for (String line : lines.values()) {
+            System.out.println(line);
+        }
+        if (!result.getConflicts().isEmpty()) {
+            System.out.println("Encountered a merge conflict.");
         }
-        return mainBranch;
     }
 }
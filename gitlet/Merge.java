@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The result of merging one commit into another, worked out in memory
+ *  from the three trees before anything is written. The result is kept as
+ *  changes to the current branch's snapshot: files taken whole from the
+ *  given branch, files merged line by line, and which of those conflict.
+ *  Only the directories the two branches changed since the split point are
+ *  read, and nothing is stored until store() is called.
+ *
+ *  @author Rong
+ */
+class Merge {
+
+    /** Files the given branch changed and the current branch did not, by
+     *  path, mapped to their blob ids in the given branch, or to null for
+     *  files it removed. */
+    private final Map<String, String> taken = new TreeMap<>();
+
+    /** Files both branches changed differently, by path, mapped to their
+     *  merged content. */
+    private final Map<String, byte[]> merged = new TreeMap<>();
+
+    /** The paths of MERGED whose content has conflicts. */
+    private final Set<String> conflicts = new TreeSet<>();
+
+    /** Returns the merge of THEIRS into OURS, whose split point is BASE. */
+    static Merge compute(Commit base, Commit ours, Commit theirs) {
+        Merge merge = new Merge();
+        Map<String, String> ourChanges = Tree.diff(base.getTreeId(), ours.getTreeId());
+        Map<String, String> theirChanges = Tree.diff(base.getTreeId(), theirs.getTreeId());
+        for (Map.Entry<String, String> change : theirChanges.entrySet()) {
+            String path = change.getKey();
+            String theirId = change.getValue();
+            if (!ourChanges.containsKey(path)) {
+                merge.taken.put(path, theirId);
+                continue;
+            }
+            String ourId = ourChanges.get(path);
+            if (Objects.equals(ourId, theirId)) {
+                continue;
+            }
+            Diff3 result = Diff3.merge(content(Tree.entryId(base.getTreeId(), path), path),
+                                       content(ourId, path), content(theirId, path));
+            merge.merged.put(path, result.getContent());
+            // A file removed on one side and changed on the other always conflicts.
+            if (result.isConflicted() || ourId == null || theirId == null) {
+                merge.conflicts.add(path);
+            }
+        }
+        return merge;
+    }
+
+    /** Returns the content of blob ID, stored for PATH, or null if ID is
+     *  null. */
+    private static byte[] content(String id, String path) {
+        return id == null ? null : Blob.stored(id, path).getContent();
+    }
+
+    /** Returns the files taken whole from the given branch, mapped to their
+     *  blob ids, or to null for files it removed. */
+    Map<String, String> getTaken() {
+        return Collections.unmodifiableMap(taken);
+    }
+
+    /** Returns the files merged line by line. */
+    Set<String> getMerged() {
+        return Collections.unmodifiableSet(merged.keySet());
+    }
+
+    /** Returns the merged files whose content has conflicts. */
+    Set<String> getConflicts() {
+        return Collections.unmodifiableSet(conflicts);
+    }
+
+    /** Stores the merged contents as blobs, and returns every change this
+     *  merge makes to the current branch's snapshot: paths mapped to blob
+     *  ids, or to null for files to remove. */
+    Map<String, String> store() {
+        Map<String, String> changes = new TreeMap<>(taken);
+        Hasher hasher = new Hasher();
+        for (Map.Entry<String, byte[]> entry : merged.entrySet()) {
+            changes.put(entry.getKey(), new Blob(entry.getValue(), hasher).getId());
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The messages of all commits, stored so that find does not need to read
+ *  any commit.
+ *
+ *  .gitlet/messages is a column of every message, each stored as its length
+ *  and its UTF-8 bytes, appended as commits are made; the commit graph
+ *  records where each commit's message starts. For exact lookups,
+ *  .gitlet/message/<hash> lists the ids of the commits whose message has
+ *  that SHA-1 hash, oldest first. Both are written before the commit's
+ *  graph row, and are rebuilt with the graph, so a commit with a graph row
+ *  is always indexed.
+ *
+ *  @author Rong
+ */
+class MessageIndex {
+
+    /** Records that the commit ID has message MESSAGE, whose hash is
+     *  computed with HASHER, and returns the offset of MESSAGE in the
+     *  message column. */
+    static long add(String id, String message, Hasher hasher) {
+        long offset = Repository.MESSAGES.length();
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        Utils.appendContents(Repository.MESSAGES,
+                             (Object) ByteBuffer.allocate(4).putInt(bytes.length).array(), bytes);
+        if (!Repository.MESSAGE_DIR.exists()) {
+            Repository.MESSAGE_DIR.mkdir();
+        }
+        Utils.appendContents(Utils.join(Repository.MESSAGE_DIR, hasher.hash(message)), id, "\n");
+        return offset;
+    }
+
+    /** Returns the ids of the commits whose message is exactly MESSAGE,
+     *  oldest first. */
+    static List<String> find(String message) {
+        List<String> ids = new ArrayList<>();
+        File bucket = Utils.join(Repository.MESSAGE_DIR, Utils.sha1(message));
+        if (bucket.isFile()) {
+            String lines = Utils.readContentsAsString(bucket);
+            for (int i = 0; i + Utils.UID_LENGTH < lines.length(); i += Utils.UID_LENGTH + 1) {
+                ids.add(lines.substring(i, i + Utils.UID_LENGTH));
+            }
+        }
+        return ids;
+    }
+
+    /** Returns the message column mapped into memory, for use with
+     *  messageAt, or null if no commit has been indexed. */
+    static MappedByteBuffer column() {
+        if (!Repository.MESSAGES.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(Repository.MESSAGES.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the message stored at OFFSET of COLUMN. */
+    static String messageAt(MappedByteBuffer column, long offset) {
+        int start = (int) offset;
+        byte[] bytes = new byte[column.getInt(start)];
+        column.get(start + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Deletes the message column and every exact-match list. */
+    static void clear() {
+        Repository.MESSAGES.delete();
+        List<String> buckets = Utils.plainFilenamesIn(Repository.MESSAGE_DIR);
+        if (buckets != null) {
+            for (String bucket : buckets) {
+                Utils.join(Repository.MESSAGE_DIR, bucket).delete();
+            }
+        }
+    }
+}
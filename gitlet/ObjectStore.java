@@ -0,0 +1,219 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** Reads and packs the objects of a repository. An object is either loose,
+ *  in its own file under .gitlet/commit, .gitlet/tree or .gitlet/blob, or
+ *  stored in one
+ *  of the packs under .gitlet/pack; callers of read do not need to know
+ *  which.
+ *
+ *  @author Rong
+ */
+public class ObjectStore {
+
+    /** Type of a serialized Commit. */
+    static final byte COMMIT = 1;
+    /** Type of the raw contents of a file. */
+    static final byte BLOB = 2;
+    /** Type of the listing of one directory of a snapshot. */
+    static final byte TREE = 3;
+
+    /** The longest chain of deltas a packed blob may need to be rebuilt. */
+    private static final int MAX_DEPTH = 50;
+
+    /** Returns the contents of the object ID of type TYPE, or null if the
+     *  repository does not have it. */
+    static byte[] read(String id, byte type) {
+        return read(id, type, null);
+    }
+
+    /** Returns true iff the repository has an object ID of type TYPE. */
+    static boolean contains(String id, byte type) {
+        return contains(id, type, null);
+    }
+
+    /** As contains(ID, TYPE), looking in PACKS, or in packs() if PACKS is
+     *  null. */
+    static boolean contains(String id, byte type, List<Pack> packs) {
+        if (looseFile(id, type).isFile()) {
+            return true;
+        }
+        for (Pack pack : packs == null ? packs() : packs) {
+            if (pack.typeOf(id) == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the type of the object ID, or 0 if the repository does not
+     *  have it. */
+    static byte typeOf(String id) {
+        for (byte type : new byte[] {COMMIT, TREE, BLOB}) {
+            if (looseFile(id, type).isFile()) {
+                return type;
+            }
+        }
+        for (Pack pack : packs()) {
+            byte type = pack.typeOf(id);
+            if (type > 0) {
+                return type;
+            }
+        }
+        return 0;
+    }
+
+    /** As read(ID, TYPE), looking in PACKS, or in packs() if PACKS is
+     *  null. */
+    static byte[] read(String id, byte type, List<Pack> packs) {
+        File loose = looseFile(id, type);
+        if (loose.isFile()) {
+            return Utils.readContents(loose);
+        }
+        for (Pack pack : packs == null ? packs() : packs) {
+            if (pack.typeOf(id) == type) {
+                return pack.read(id);
+            }
+        }
+        return null;
+    }
+
+    /** Returns the packs of the repository: those the current session has
+     *  open, or, outside a session, every pack opened afresh. Work spread
+     *  over other threads, which have no session, should get them once
+     *  here and pass them on; packs are only read, so threads may share
+     *  them. */
+    static List<Pack> packs() {
+        Session session = Session.current();
+        return session != null ? session.packs() : Pack.all();
+    }
+
+    /** Returns the file the object ID of type TYPE is stored in while it
+     *  is loose. */
+    static File looseFile(String id, byte type) {
+        switch (type) {
+            case COMMIT:
+                return Utils.join(Repository.COMMIT_DIR, id);
+            case TREE:
+                return Utils.join(Repository.TREE_DIR, id);
+            default:
+                return Utils.join(Repository.BLOB_DIR, id);
+        }
+    }
+
+    /** Moves every loose object and every existing pack into a single new
+     *  pack. Successive versions of the same file are stored as deltas
+     *  against the next newer version, so the newest version of each file
+     *  is always stored whole. */
+    static void repack() {
+        List<Pack> oldPacks = Pack.all();
+        Map<String, Byte> objects = new TreeMap<>();
+        List<String> looseCommits = looseIds(Repository.COMMIT_DIR);
+        List<String> looseTrees = looseIds(Repository.TREE_DIR);
+        List<String> looseBlobs = looseIds(Repository.BLOB_DIR);
+        for (String id : looseCommits) {
+            objects.put(id, COMMIT);
+        }
+        for (String id : looseTrees) {
+            objects.put(id, TREE);
+        }
+        for (String id : looseBlobs) {
+            objects.put(id, BLOB);
+        }
+        for (Pack pack : oldPacks) {
+            for (int i = 0; i < pack.size(); i += 1) {
+                objects.put(pack.idAt(i), pack.typeAt(i));
+            }
+        }
+        if (objects.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<String>> histories = new LinkedHashMap<>();
+        Set<String> placed = new HashSet<>();
+        CommitGraph graph = CommitGraph.open();
+        for (int row = 0; row < graph.size(); row += 1) {
+            int parent = graph.parent1(row);
+            String parentTree = parent < 0 ? null : graph.treeAt(parent);
+            for (Map.Entry<String, String> entry : Tree.diff(parentTree, graph.treeAt(row)).entrySet()) {
+                String blobId = entry.getValue();
+                if (blobId != null && objects.get(blobId) != null && objects.get(blobId) == BLOB
+                    && placed.add(blobId)) {
+                    histories.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(blobId);
+                }
+            }
+        }
+
+        Pack.Writer writer = new Pack.Writer();
+        for (Map.Entry<String, Byte> object : objects.entrySet()) {
+            if (object.getValue() != BLOB) {
+                writer.addWhole(object.getKey(), object.getValue(),
+                                read(object.getKey(), object.getValue(), oldPacks));
+            } else if (!placed.contains(object.getKey())) {
+                writer.addWhole(object.getKey(), BLOB, read(object.getKey(), BLOB, oldPacks));
+            }
+        }
+        for (List<String> versions : histories.values()) {
+            Collections.reverse(versions);
+            String newerId = null;
+            byte[] newer = null;
+            int depth = 0;
+            for (String id : versions) {
+                byte[] content = read(id, BLOB, oldPacks);
+                byte[] delta = null;
+                if (newer != null && depth < MAX_DEPTH) {
+                    delta = Delta.create(newer, content);
+                }
+                if (delta != null && delta.length < content.length / 2) {
+                    writer.addDelta(id, BLOB, newerId, delta);
+                    depth += 1;
+                } else {
+                    writer.addWhole(id, BLOB, content);
+                    depth = 0;
+                }
+                newerId = id;
+                newer = content;
+            }
+        }
+        File packFile = writer.finish();
+
+        for (Pack pack : oldPacks) {
+            if (!pack.getFile().equals(packFile)) {
+                pack.getFile().delete();
+                pack.getIndexFile().delete();
+            }
+        }
+        for (String id : looseCommits) {
+            looseFile(id, COMMIT).delete();
+        }
+        for (String id : looseTrees) {
+            looseFile(id, TREE).delete();
+        }
+        for (String id : looseBlobs) {
+            looseFile(id, BLOB).delete();
+        }
+    }
+
+    /** Returns the ids of the loose objects in DIR. */
+    private static List<String> looseIds(File dir) {
+        List<String> ids = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names != null) {
+            for (String name : names) {
+                if (name.length() == Utils.UID_LENGTH) {
+                    ids.add(name);
+                }
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,374 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** A packfile in .gitlet/pack together with its index.
+ *
+ *  The pack holds a header, then one entry per object, then the SHA-1 of
+ *  everything before it. Each entry is a type byte (with DELTA_FLAG set if
+ *  the entry is a delta), the length of the object, the id of the delta
+ *  base if any, and the zlib-compressed object or delta.
+ *
+ *  The index is a header, a 256-entry fanout table whose entry B counts the
+ *  objects whose id starts with a byte no greater than B, the sorted raw
+ *  ids, then the type and pack offset of each object in the same order.
+ *  It is memory-mapped rather than read, and a lookup only touches the
+ *  fanout entry and a binary search over the ids that share the first
+ *  byte, so opening a pack costs the same no matter how many objects it
+ *  holds.
+ *
+ *  @author Rong
+ */
+class Pack {
+
+    private static final int PACK_MAGIC = 0x474c504b;
+    private static final int INDEX_MAGIC = 0x474c4958;
+    private static final int VERSION = 2;
+    /** Set in an entry's type byte when the entry is a delta. */
+    private static final int DELTA_FLAG = 0x80;
+    /** Size in bytes of a raw SHA-1 id. */
+    private static final int ID_BYTES = 20;
+    /** Offset of the fanout table in an index: magic, version and count. */
+    private static final int FANOUT_START = 12;
+    /** Offset of the sorted ids in an index. */
+    private static final int IDS_START = FANOUT_START + 256 * 4;
+
+    /** The .pack file. */
+    private final File packFile;
+    /** The mapped contents of the index. */
+    private final MappedByteBuffer index;
+    /** The number of objects in this pack. */
+    private final int count;
+
+    private Pack(File packFile, File indexFile) {
+        this.packFile = packFile;
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        if (index.capacity() < IDS_START || index.getInt(0) != INDEX_MAGIC
+            || index.getInt(4) != VERSION) {
+            throw Utils.error("Bad pack index %s.", indexFile.getName());
+        }
+        count = index.getInt(8);
+    }
+
+    /** Returns every pack in the repository. */
+    static List<Pack> all() {
+        return all(List.of());
+    }
+
+    /** Returns every pack in the repository, reusing those of OPEN that are
+     *  still there instead of mapping their indexes again. */
+    static List<Pack> all(List<Pack> open) {
+        List<Pack> packs = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(Repository.PACK_DIR);
+        if (names == null) {
+            return packs;
+        }
+        for (String name : names) {
+            if (name.endsWith(".pack")) {
+                String base = name.substring(0, name.length() - ".pack".length());
+                File index = Utils.join(Repository.PACK_DIR, base + ".idx");
+                if (index.isFile()) {
+                    packs.add(reuse(open, Utils.join(Repository.PACK_DIR, name), index));
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Returns the pack of OPEN stored in PACKFILE, or that pack opened
+     *  with its index INDEXFILE if OPEN does not have it. */
+    private static Pack reuse(List<Pack> open, File packFile, File indexFile) {
+        for (Pack pack : open) {
+            if (pack.packFile.equals(packFile)) {
+                return pack;
+            }
+        }
+        return new Pack(packFile, indexFile);
+    }
+
+    File getFile() {
+        return packFile;
+    }
+
+    File getIndexFile() {
+        String name = packFile.getName();
+        return Utils.join(Repository.PACK_DIR, name.substring(0, name.length() - ".pack".length()) + ".idx");
+    }
+
+    /** Returns the number of objects in this pack. */
+    int size() {
+        return count;
+    }
+
+    /** Returns the hex id of the Ith object in sorted order. */
+    String idAt(int i) {
+        byte[] id = new byte[ID_BYTES];
+        index.get(IDS_START + i * ID_BYTES, id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns the type of the Ith object in sorted order. */
+    byte typeAt(int i) {
+        return index.get(typesStart() + i);
+    }
+
+    /** Returns the type of object ID, or -1 if it is not in this pack. */
+    byte typeOf(String id) {
+        int i = find(id);
+        return i < 0 ? -1 : typeAt(i);
+    }
+
+    private long offsetAt(int i) {
+        return index.getLong(typesStart() + count + i * 8);
+    }
+
+    private int typesStart() {
+        return IDS_START + count * ID_BYTES;
+    }
+
+    /** Returns the contents of object ID, or null if it is not in this
+     *  pack. Deltas are resolved against their bases. */
+    byte[] read(String id) {
+        int i = find(id);
+        if (i < 0) {
+            return null;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(packFile, "r")) {
+            return readAt(in, offsetAt(i));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    private byte[] readAt(RandomAccessFile in, long offset) throws IOException {
+        in.seek(offset);
+        int kind = in.readUnsignedByte();
+        int length = in.readInt();
+        byte[] baseId = null;
+        if ((kind & DELTA_FLAG) != 0) {
+            baseId = new byte[ID_BYTES];
+            in.readFully(baseId);
+        }
+        byte[] compressed = new byte[in.readInt()];
+        in.readFully(compressed);
+        if (baseId == null) {
+            return inflate(compressed, length);
+        }
+        int base = find(baseId);
+        if (base < 0) {
+            throw Utils.error("Missing delta base %s.", Utils.toHex(baseId));
+        }
+        byte[] delta = inflate(compressed, length);
+        return Delta.apply(readAt(in, offsetAt(base)), delta);
+    }
+
+    /** Returns the position of ID in sorted order, or -1. */
+    private int find(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        for (int i = 0; i < id.length(); i += 1) {
+            if (Character.digit(id.charAt(i), 16) < 0) {
+                return -1;
+            }
+        }
+        return find(fromHex(id));
+    }
+
+    private int find(byte[] id) {
+        int first = id[0] & 0xff;
+        int lo = first == 0 ? 0 : index.getInt(FANOUT_START + (first - 1) * 4);
+        int hi = index.getInt(FANOUT_START + first * 4) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareId(mid, id);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Compares the Ith id in the index with ID as unsigned bytes. */
+    private int compareId(int i, byte[] id) {
+        int start = IDS_START + i * ID_BYTES;
+        for (int k = 0; k < ID_BYTES; k += 1) {
+            int cmp = Integer.compare(index.get(start + k) & 0xff, id[k] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private static byte[] inflate(byte[] compressed, int length) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] result = new byte[length];
+            int done = 0;
+            while (done < length && !inflater.finished()) {
+                done += inflater.inflate(result, done, length - done);
+            }
+            return result;
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    static byte[] fromHex(String id) {
+        byte[] raw = new byte[id.length() / 2];
+        for (int i = 0; i < raw.length; i += 1) {
+            raw[i] = (byte) Integer.parseInt(id.substring(2 * i, 2 * i + 2), 16);
+        }
+        return raw;
+    }
+
+    /** Writes a new pack, one object at a time. */
+    static class Writer {
+        private final File temp;
+        private final MessageDigest digest;
+        private final DataOutputStream out;
+        private final Deflater deflater = new Deflater();
+        private final List<byte[]> entryIds = new ArrayList<>();
+        private final List<Byte> entryTypes = new ArrayList<>();
+        private final List<Long> entryOffsets = new ArrayList<>();
+        private long offset;
+
+        Writer() {
+            if (!Repository.PACK_DIR.exists()) {
+                Repository.PACK_DIR.mkdir();
+            }
+            temp = Utils.join(Repository.PACK_DIR, "pack.tmp");
+            try {
+                digest = Hasher.newDigest();
+                OutputStream file = new BufferedOutputStream(Files.newOutputStream(temp.toPath()));
+                out = new DataOutputStream(new DigestOutputStream(file, digest));
+                out.writeInt(PACK_MAGIC);
+                out.writeInt(VERSION);
+                offset = 8;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+
+        /** Adds object ID of TYPE with contents CONTENT. */
+        void addWhole(String id, byte type, byte[] content) {
+            writeEntry(id, type, type, null, content);
+        }
+
+        /** Adds object ID of TYPE stored as DELTA against object BASEID. */
+        void addDelta(String id, byte type, String baseId, byte[] delta) {
+            writeEntry(id, type, type | DELTA_FLAG, baseId, delta);
+        }
+
+        private void writeEntry(String id, byte type, int kind, String baseId, byte[] data) {
+            deflater.reset();
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                compressed.write(buffer, 0, n);
+            }
+            try {
+                entryIds.add(fromHex(id));
+                entryTypes.add(type);
+                entryOffsets.add(offset);
+                out.writeByte(kind);
+                out.writeInt(data.length);
+                offset += 5;
+                if (baseId != null) {
+                    out.write(fromHex(baseId));
+                    offset += ID_BYTES;
+                }
+                out.writeInt(compressed.size());
+                compressed.writeTo(out);
+                offset += 4 + compressed.size();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+
+        /** Finishes the pack and its index and returns the pack file. */
+        File finish() {
+            deflater.end();
+            try {
+                out.flush();
+                String name = "pack-" + Utils.toHex(digest.digest());
+                out.write(Pack.fromHex(name.substring("pack-".length())));
+                out.close();
+                File packFile = Utils.join(Repository.PACK_DIR, name + ".pack");
+                writeIndex(Utils.join(Repository.PACK_DIR, name + ".idx"));
+                Files.move(temp.toPath(), packFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                return packFile;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+
+        private void writeIndex(File indexFile) throws IOException {
+            Integer[] order = new Integer[entryIds.size()];
+            for (int i = 0; i < order.length; i += 1) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(entryIds.get(a), entryIds.get(b)));
+            File temp = Utils.join(Repository.PACK_DIR, "idx.tmp");
+            try (DataOutputStream index = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+                index.writeInt(INDEX_MAGIC);
+                index.writeInt(VERSION);
+                index.writeInt(order.length);
+                int[] fanout = new int[256];
+                for (byte[] id : entryIds) {
+                    fanout[id[0] & 0xff] += 1;
+                }
+                int total = 0;
+                for (int b = 0; b < fanout.length; b += 1) {
+                    total += fanout[b];
+                    index.writeInt(total);
+                }
+                for (int i : order) {
+                    index.write(entryIds.get(i));
+                }
+                for (int i : order) {
+                    index.writeByte(entryTypes.get(i));
+                }
+                for (int i : order) {
+                    index.writeLong(entryOffsets.get(i));
+                }
+            }
+            Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
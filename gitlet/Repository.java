@@ -20,6 +20,38 @@ public class Repository {
     /** The current working directory. */
     public static final File CWD = new File(System.getProperty("user.dir"));
     /** The .gitlet directory. */
-
+    public static final File GITLET_DIR = join(CWD, ".gitlet");
+    /** Serialized commits, one file per commit id. */
+    public static final File COMMIT_DIR = join(GITLET_DIR, "commit");
+    /** File contents, one file per distinct version, named by content hash. */
+    public static final File BLOB_DIR = join(GITLET_DIR, "blob");
+    /** Directory listings, one file per distinct tree, named by content hash. */
+    public static final File TREE_DIR = join(GITLET_DIR, "tree");
+    /** Packs of compressed objects, each with a sorted index. */
+    public static final File PACK_DIR = join(GITLET_DIR, "pack");
+    /** Ids of every commit ever made, one per line, in creation order. */
+    public static final File COMMIT_INDEX = join(GITLET_DIR, "commits");
+    /** Sorted copy of the commit ids, used to resolve abbreviated ids. */
+    public static final File SORTED_COMMIT_INDEX = join(GITLET_DIR, "commit-index");
+    /** Parents, generation numbers, trees and times of all commits, one
+     *  fixed-width row per commit in the order of COMMIT_INDEX. */
+    public static final File COMMIT_GRAPH = join(GITLET_DIR, "commit-graph");
+    /** The message of every commit, in the order of COMMIT_INDEX. */
+    public static final File MESSAGES = join(GITLET_DIR, "messages");
+    /** Ids of the commits with each message, one file per message hash. */
+    public static final File MESSAGE_DIR = join(GITLET_DIR, "message");
+    /** Branch heads and the current branch. */
+    public static final File COMMIT_TREE = join(GITLET_DIR, "commitTree.ser");
+    /** Cached stat data and blob ids of working files. */
+    public static final File WORKING_INDEX = join(GITLET_DIR, "index");
+    /** Files staged for addition and removal. */
+    public static final File STAGING_AREA = join(GITLET_DIR, "stagingArea.ser");
+    /** Changes to the staging area made since STAGING_AREA was written. */
+    public static final File STAGING_JOURNAL = join(GITLET_DIR, "staging-journal");
+    /** The id of the commit being merged by merge --no-commit, which the
+     *  next commit takes as its second parent. */
+    public static final File MERGE_HEAD = join(GITLET_DIR, "MERGE_HEAD");
+    /** The Unix domain socket a running daemon listens on. */
+    public static final File DAEMON_SOCKET = join(GITLET_DIR, "daemon.sock");
 
 }
@@ -0,0 +1,301 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/** Repository state kept in memory across the commands a daemon or a
+ *  batch runs. The branch structure, the staging area and the working
+ *  index are each remembered together with the size, modification time and
+ *  inode of the files they were read from or last written to; a later
+ *  command reuses the object only if its files are unchanged, so changes
+ *  made to .gitlet by anything else are picked up. As in WorkingIndex, an
+ *  object read from files modified too recently when they were checked is
+ *  read again every time, since a change within the same timestamp tick
+ *  would not show. An object the session wrote itself is the exception:
+ *  its state is taken right after the write, so it already holds the
+ *  session's own change, and a later write by anything else shows in the
+ *  state unless it keeps the files' sizes and inodes and lands within the
+ *  same tick of their timestamps. Without this, a daemon serving commands
+ *  in quick succession would read back everything it had just written. The commit objects the branch structure has read stay cached
+ *  along with it.
+ *
+ *  A session may also hold back writes: objects are then saved into the
+ *  session and written to their files only at the next flush(). Such a
+ *  session can undo a failed command with begin() and rollback(), so that
+ *  the half-made changes it leaves are not written at the next flush.
+ *
+ *  A session also keeps a Hasher for each of its threads, so that hashing
+ *  a single value, as Utils.sha1 does, does not set up a digest each time.
+ *
+ *  The packs of the repository are opened once per session and listed
+ *  again only when .gitlet/pack changes, so looking up an object does not
+ *  map every pack index again. Main runs each command it is given in a
+ *  session of its own for this reason.
+ *
+ *  Commands find the session through the thread they run on, so code that
+ *  runs outside a session reads and writes its files as before.
+ *
+ *  @author Rong
+ */
+class Session {
+
+    /** A thread that runs commands against SESSION. */
+    static class Worker extends Thread {
+        private final Session session;
+
+        Worker(Session session, Runnable task) {
+            super(task, "gitlet-session");
+            this.session = session;
+        }
+    }
+
+    /** An object and the state of its files when it was read or written.
+     *  The state is null while the object has changes not yet written. */
+    private static class Entry {
+        private final Object value;
+        private final String stamp;
+        /** True if a file was modified so shortly before the state was taken
+         *  that a later change might not show in it. */
+        private final boolean racy;
+
+        Entry(Object value, String stamp, boolean racy) {
+            this.value = value;
+            this.stamp = stamp;
+            this.racy = racy;
+        }
+    }
+
+    /** A write held back until the next flush. */
+    private static class Pending {
+        private final Object value;
+        private final Runnable writer;
+        private final File[] files;
+
+        Pending(Object value, Runnable writer, File[] files) {
+            this.value = value;
+            this.writer = writer;
+            this.files = files;
+        }
+    }
+
+    /** The objects held by this session, by the name of their first file. */
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /** The writes held back, in the order they were first made. */
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+
+    /** True iff writes are held back until flush(). */
+    private final boolean deferred;
+
+    /** The open packs of the repository, or null until they are first
+     *  needed. */
+    private List<Pack> packs;
+
+    /** The state of the pack directory when PACKS were listed. */
+    private Entry packDir;
+
+    /** The Hasher of each thread that has used one for this session. */
+    private final ThreadLocal<Hasher> hashers = ThreadLocal.withInitial(Hasher::new);
+
+    /** Since begin(): the objects loaded, by the name of their first file,
+     *  each with the stored form of the value held back for it before it
+     *  was first loaded, or null if it had no writes held back or is only a
+     *  cache. Null before begin(). */
+    private Map<String, byte[]> before;
+
+    Session() {
+        this(false);
+    }
+
+    Session(boolean deferred) {
+        this.deferred = deferred;
+    }
+
+    /** Returns the session of the current thread, or null if it is not
+     *  running commands for a daemon or a batch. */
+    static Session current() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof Worker ? ((Worker) thread).session : null;
+    }
+
+    /** Runs TASK on a new Worker for SESSION and waits for it to finish.
+     *  An exception TASK throws is thrown again here. */
+    static void run(Session session, Runnable task) {
+        RuntimeException[] failure = new RuntimeException[1];
+        Worker worker = new Worker(session, () -> {
+            try {
+                task.run();
+            } catch (RuntimeException excp) {
+                failure[0] = excp;
+            }
+        });
+        worker.start();
+        try {
+            worker.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /** Returns the object stored in FILES, reading it with READER unless it
+     *  is held and FILES have not changed since. */
+    <T> T load(Supplier<T> reader, File... files) {
+        return load(reader, false, files);
+    }
+
+    /** As load(), for an object that only saves work, such as the working
+     *  index: rollback() forgets it rather than restoring it. */
+    <T> T loadCache(Supplier<T> reader, File... files) {
+        return load(reader, true, files);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T load(Supplier<T> reader, boolean cache, File... files) {
+        Entry entry = entries.get(files[0].getName());
+        if (before != null && !before.containsKey(files[0].getName())) {
+            boolean held = !cache && entry != null && entry.stamp == null;
+            before.put(files[0].getName(), held ? Utils.serialize((Serializable) entry.value) : null);
+        }
+        if (entry != null && entry.stamp == null) {
+            return (T) entry.value;
+        }
+        Entry current = stamp(null, files);
+        if (entry != null && !entry.racy && entry.stamp.equals(current.stamp)) {
+            return (T) entry.value;
+        }
+        T value = reader.get();
+        entries.put(files[0].getName(), stamp(value, files));
+        return value;
+    }
+
+    /** Records that VALUE has just been written to FILES. Their state is
+     *  trusted even if racy, as it was taken after this session's write. */
+    void saved(Object value, File... files) {
+        entries.put(files[0].getName(), new Entry(value, stamp(null, files).stamp, false));
+    }
+
+    /** Returns true iff this session holds back writes until flush(). */
+    boolean defers() {
+        return deferred;
+    }
+
+    /** Holds VALUE, which WRITER will write to FILES at the next flush. */
+    void defer(Object value, Runnable writer, File... files) {
+        entries.put(files[0].getName(), new Entry(value, null, false));
+        pending.put(files[0].getName(), new Pending(value, writer, files));
+    }
+
+    /** Carries out every write held back, in the order they were first
+     *  made. */
+    void flush() {
+        for (Pending write : pending.values()) {
+            write.writer.run();
+            saved(write.value, write.files);
+        }
+        pending.clear();
+    }
+
+    /** Returns the Hasher of the calling thread, which this session keeps
+     *  for as long as it runs commands. */
+    Hasher hasher() {
+        return hashers.get();
+    }
+
+    /** Starts recording what rollback() needs to undo the next command.
+     *  Only objects with writes held back are copied, and only when the
+     *  command first loads them, so the cost is bounded by what a flush
+     *  would write. */
+    void begin() {
+        before = new HashMap<>();
+    }
+
+    /** Undoes what the command run since begin() did to the objects it
+     *  loaded. Each of them is forgotten along with its held-back write, so
+     *  the next command reads it from its files again; for those that had
+     *  writes held back from earlier commands, the state they had before
+     *  the command is written to their first file first and their other
+     *  files, which only hold changes since, are deleted. Commits, trees
+     *  and blobs the command wrote are left for gc to collect. */
+    void rollback() {
+        for (Map.Entry<String, byte[]> loaded : before.entrySet()) {
+            Pending write = pending.remove(loaded.getKey());
+            entries.remove(loaded.getKey());
+            if (loaded.getValue() != null) {
+                restore(loaded.getValue(), write.files);
+            }
+        }
+        before = new HashMap<>();
+    }
+
+    /** Replaces FILES with the single file FILES[0] holding STORED. */
+    private static void restore(byte[] stored, File... files) {
+        File temp = new File(files[0].getParentFile(), files[0].getName() + ".tmp");
+        Utils.writeContents(temp, (Object) stored);
+        try {
+            Files.move(temp.toPath(), files[0].toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (int i = 1; i < files.length; i += 1) {
+                Files.deleteIfExists(files[i].toPath());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the packs of the repository. They are listed again only if
+     *  the pack directory has changed since they last were, or had changed
+     *  too recently then for a later change to show, and packs that are
+     *  still there are not opened again. */
+    List<Pack> packs() {
+        Entry current = stamp(null, Repository.PACK_DIR);
+        if (packs == null || packDir.racy || !packDir.stamp.equals(current.stamp)) {
+            packs = Pack.all(packs == null ? List.of() : packs);
+            packDir = current;
+        }
+        return packs;
+    }
+
+    /** Forgets every object, and every write held back, so that the next
+     *  command reads all of them again. Used after a command fails, as it
+     *  may have changed objects it never wrote. */
+    void invalidate() {
+        entries.clear();
+        pending.clear();
+    }
+
+    /** Returns an entry for VALUE holding the size, modification time and
+     *  inode of each of FILES. The entry is racy, by the rule WorkingIndex
+     *  uses, if any of FILES was modified too recently for a change made in
+     *  the same tick of its timestamp to show. */
+    private static Entry stamp(Object value, File... files) {
+        StringBuilder stamp = new StringBuilder();
+        boolean racy = false;
+        for (File file : files) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                stamp.append(attrs.size()).append(' ').append(attrs.lastModifiedTime().toMillis())
+                    .append(' ').append(attrs.lastModifiedTime().toInstant().getNano())
+                    .append(' ').append(attrs.fileKey()).append(';');
+                racy = racy || WorkingIndex.isRacy(attrs.lastModifiedTime());
+            } catch (NoSuchFileException excp) {
+                stamp.append("-;");
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+        return new Entry(value, stamp.toString(), racy);
+    }
+}
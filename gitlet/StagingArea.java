@@ -1,14 +1,53 @@
 package gitlet;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.CRC32;
 
+/** The files staged for addition and for removal. The staging area is kept
+ *  as a snapshot, .gitlet/stagingArea.ser, plus a journal of the changes
+ *  made since, .gitlet/staging-journal. Each change is one small record
+ *  appended to the journal and forced to disk, so staging a file costs the
+ *  same however many files are already staged. The journal is folded back
+ *  into the snapshot once it grows large or the staging area is empty.
+ *
+ *  A journal record is the length of its body, the body (an operation
+ *  byte, a blob id and a file name) and a CRC-32 of the body. A record cut
+ *  short by a crash fails its check, and it and anything after it are
+ *  dropped on load. Replaying the journal over a snapshot that already
+ *  includes its records leaves the snapshot unchanged, so a crash while
+ *  compacting loses nothing.
+ *
+ *  @author Rong
+ */
 public class StagingArea implements Serializable {
+    private static final long serialVersionUID = -8654674774082142724L;
+
+    /** Journal operations. */
+    private static final byte ADD = 1, ADD_RM = 2, REMOVE = 3, REMOVE_RM = 4, CLEAR = 5;
+
+    /** Journal size in bytes past which save() compacts it into the
+     *  snapshot. */
+    private static final long COMPACT_LIMIT = 1 << 16;
+
     private Map<String, Blob> stagedFiles;
 
     private Map<String, Blob> stagedRmFiles;
 
+    /** Journal records held back until finishBatch(), or null if changes
+     *  are written as they are made. */
+    private transient ByteArrayOutputStream batch;
+
+    /** Journal records held back by a session that defers writes, until it
+     *  flushes them. */
+    private transient ByteArrayOutputStream unwritten;
+
     public StagingArea() {
         stagedFiles = new HashMap<>();
         stagedRmFiles = new HashMap<>();
@@ -16,36 +55,75 @@ public class StagingArea implements Serializable {
 
     public void add(String fileName, Blob blob) {
         stagedFiles.put(fileName, blob);
-        this.save();
+        log(ADD, blob.getId(), fileName);
     }
 
     public void addRm(String fileName, Blob blob) {
         stagedRmFiles.put(fileName, blob);
-        this.save();
+        log(ADD_RM, blob.getId(), fileName);
     }
 
     public void remove(String fileName) {
         stagedFiles.remove(fileName);
-        this.save();
+        log(REMOVE, "", fileName);
     }
 
     public boolean contains(String fileName) {
         return stagedFiles.containsKey(fileName);
     }
 
+    /** Returns the staging area as of the last change recorded in its
+     *  journal. */
     public static StagingArea load() {
-        File fileIn = new File(".gitlet/stagingArea.ser");
-        return Utils.readObject(fileIn, StagingArea.class);
+        Session session = Session.current();
+        if (session != null) {
+            return session.load(StagingArea::read, Repository.STAGING_AREA, Repository.STAGING_JOURNAL);
+        }
+        return read();
+    }
+
+    private static StagingArea read() {
+        StagingArea stagingArea = Repository.STAGING_AREA.isFile()
+            ? Utils.readObject(Repository.STAGING_AREA, StagingArea.class) : new StagingArea();
+        stagingArea.replay();
+        return stagingArea;
     }
 
+    /** Tells the daemon session, if there is one, that this staging area
+     *  matches its files as they are now. */
+    private void stored() {
+        Session session = Session.current();
+        if (session != null) {
+            session.saved(this, Repository.STAGING_AREA, Repository.STAGING_JOURNAL);
+        }
+    }
+
+    /** Makes sure the staging area is stored. Every change is already in the
+     *  journal, so this only writes a new snapshot when the journal has
+     *  grown large, or when the staging area is empty and a snapshot costs
+     *  nothing. In a session that defers writes, this waits for its next
+     *  flush. */
     public void save() {
-        File fileOut = new File(".gitlet/stagingArea.ser");
-        Utils.writeObject(fileOut, this);
+        Session session = Session.current();
+        if (session != null && session.defers()) {
+            session.defer(this, this::flush, Repository.STAGING_AREA, Repository.STAGING_JOURNAL);
+            return;
+        }
+        compactIfNeeded();
+    }
+
+    private void compactIfNeeded() {
+        long journalSize = Repository.STAGING_JOURNAL.length();
+        if (!Repository.STAGING_AREA.isFile() || journalSize > COMPACT_LIMIT
+            || journalSize > 0 && stagedFiles.isEmpty() && stagedRmFiles.isEmpty()) {
+            compact();
+        }
     }
 
     public void clear() {
         stagedFiles = new HashMap<>();
         stagedRmFiles = new HashMap<>();
+        log(CLEAR, "", "");
     }
 
     public Map<String, Blob> getStagedFiles() {
@@ -58,6 +136,167 @@ public class StagingArea implements Serializable {
 
     public void rmRmFiles(String fileName) {
         stagedRmFiles.remove(fileName);
-        this.save();
+        log(REMOVE_RM, "", fileName);
+    }
+
+    /** Holds back the journal records of the following changes until
+     *  finishBatch(), so that they are written together. */
+    public void startBatch() {
+        batch = new ByteArrayOutputStream();
+    }
+
+    /** Writes the changes made since startBatch() to the journal in a single
+     *  append. */
+    public void finishBatch() {
+        byte[] records = batch.toByteArray();
+        batch = null;
+        if (records.length > 0) {
+            write(ByteBuffer.wrap(records));
+        }
+    }
+
+    /** Appends the change OP to the journal and forces it to disk, unless a
+     *  batch is open. BLOBID and FILENAME are its operands. */
+    private void log(byte op, String blobId, String fileName) {
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(body);
+            out.writeByte(op);
+            out.writeUTF(blobId);
+            out.writeUTF(fileName);
+            out.close();
+            CRC32 crc = new CRC32();
+            crc.update(body.toByteArray());
+            ByteBuffer record = ByteBuffer.allocate(body.size() + 8);
+            record.putInt(body.size()).put(body.toByteArray()).putInt((int) crc.getValue());
+            record.flip();
+            if (batch != null) {
+                batch.write(record.array());
+            } else {
+                write(record);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Appends RECORDS to the journal, or holds them back if the current
+     *  session defers writes. */
+    private void write(ByteBuffer records) {
+        Session session = Session.current();
+        if (session != null && session.defers()) {
+            if (unwritten == null) {
+                unwritten = new ByteArrayOutputStream();
+            }
+            unwritten.write(records.array(), records.position(), records.remaining());
+            session.defer(this, this::flush, Repository.STAGING_AREA, Repository.STAGING_JOURNAL);
+        } else {
+            append(records);
+        }
+    }
+
+    /** Appends the records held back for a session to the journal, and
+     *  compacts it if needed. */
+    private void flush() {
+        if (unwritten != null && unwritten.size() > 0) {
+            append(ByteBuffer.wrap(unwritten.toByteArray()));
+        }
+        unwritten = null;
+        compactIfNeeded();
+    }
+
+    /** Appends RECORDS to the journal and forces them to disk. */
+    private void append(ByteBuffer records) {
+        try {
+            try (FileChannel journal = FileChannel.open(Repository.STAGING_JOURNAL.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (records.hasRemaining()) {
+                    journal.write(records);
+                }
+                journal.force(false);
+            }
+            stored();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Applies the intact records of the journal to this staging area, and
+     *  cuts off any torn record at its end. */
+    private void replay() {
+        if (!Repository.STAGING_JOURNAL.isFile()) {
+            return;
+        }
+        ByteBuffer journal = ByteBuffer.wrap(Utils.readContents(Repository.STAGING_JOURNAL));
+        int valid = 0;
+        try {
+            while (journal.remaining() >= 4) {
+                int length = journal.getInt();
+                if (length < 0 || journal.remaining() < length + 4) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                journal.get(body);
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                if (journal.getInt() != (int) crc.getValue()) {
+                    break;
+                }
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+                apply(in.readByte(), in.readUTF(), in.readUTF());
+                valid = journal.position();
+            }
+            if (valid < journal.capacity()) {
+                try (FileChannel channel = FileChannel.open(Repository.STAGING_JOURNAL.toPath(),
+                        StandardOpenOption.WRITE)) {
+                    channel.truncate(valid);
+                    channel.force(false);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Applies the journaled change OP with operands BLOBID and FILENAME. */
+    private void apply(byte op, String blobId, String fileName) {
+        switch (op) {
+            case ADD:
+                stagedFiles.put(fileName, Blob.stored(blobId, fileName));
+                break;
+            case ADD_RM:
+                stagedRmFiles.put(fileName, Blob.stored(blobId, fileName));
+                break;
+            case REMOVE:
+                stagedFiles.remove(fileName);
+                break;
+            case REMOVE_RM:
+                stagedRmFiles.remove(fileName);
+                break;
+            case CLEAR:
+                stagedFiles = new HashMap<>();
+                stagedRmFiles = new HashMap<>();
+                break;
+            default:
+                throw Utils.error("Corrupt staging journal.");
+        }
+    }
+
+    /** Writes this staging area as the new snapshot, forced to disk and
+     *  renamed into place, and then empties the journal. */
+    private void compact() {
+        File temp = Utils.join(Repository.GITLET_DIR, "stagingArea.tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(Utils.serialize(this));
+                out.getFD().sync();
+            }
+            Files.move(temp.toPath(), Repository.STAGING_AREA.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(Repository.STAGING_JOURNAL.toPath());
+            stored();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
     }
 }
@@ -0,0 +1,281 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** One directory of a commit's snapshot. A tree lists, in order of name,
+ *  the files of its directory with their blob ids and the subdirectories
+ *  with their tree ids, and is addressed by the SHA-1 hash of that listing.
+ *  Directories a commit does not change therefore keep their ids, so they
+ *  are shared with the parent commit and are never written again, and two
+ *  snapshots can be compared without looking inside identical directories.
+ *  Loose trees are stored in .gitlet/tree/<id>.
+ *
+ *  Each line of the stored listing is "blob <id> <name>" or
+ *  "tree <id> <name>".
+ *
+ *  @author Rong
+ */
+class Tree {
+
+    /** An entry of a tree: a file or a subdirectory. */
+    private static class Entry {
+        /** True if this entry is a subdirectory. */
+        private final boolean isTree;
+        /** The blob or tree id of this entry. */
+        private final String id;
+
+        Entry(boolean isTree, String id) {
+            this.isTree = isTree;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Entry
+                && ((Entry) other).isTree == isTree && ((Entry) other).id.equals(id);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+    }
+
+    /** The entries of this tree, by name. */
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+
+    /** Returns the tree ID, or an empty tree if ID is null. */
+    static Tree read(String id) {
+        Tree tree = new Tree();
+        if (id == null) {
+            return tree;
+        }
+        byte[] bytes = ObjectStore.read(id, ObjectStore.TREE);
+        if (bytes == null) {
+            throw Utils.error("Missing tree %s.", id);
+        }
+        String listing = new String(bytes, StandardCharsets.UTF_8);
+        int start = 0;
+        while (start < listing.length()) {
+            int end = listing.indexOf('\n', start);
+            String kind = listing.substring(start, start + 4);
+            String entryId = listing.substring(start + 5, start + 5 + Utils.UID_LENGTH);
+            String name = listing.substring(start + 6 + Utils.UID_LENGTH, end);
+            tree.entries.put(name, new Entry(kind.equals("tree"), entryId));
+            start = end + 1;
+        }
+        return tree;
+    }
+
+    /** Returns the id of the tree that results from applying CHANGES to the
+     *  tree ROOTID, which may be null for an empty tree. CHANGES maps
+     *  '/'-separated paths to their new blob ids, or to null for paths that
+     *  are removed. Only the trees on the paths to changed files are
+     *  written, all hashed with HASHER; directories left empty are
+     *  dropped. */
+    static String write(String rootId, Map<String, String> changes, Hasher hasher) {
+        if (rootId != null && changes.isEmpty()) {
+            return rootId;
+        }
+        return update(rootId, changes, hasher).save(hasher);
+    }
+
+    /** Returns the tree ID with CHANGES, relative to that tree, applied,
+     *  saving every changed subtree with HASHER. A name may change from a
+     *  file to a directory or back in one update: removing a file leaves a
+     *  directory of the same name alone, and a directory emptied by its
+     *  changes only takes its own entry with it. */
+    private static Tree update(String id, Map<String, String> changes, Hasher hasher) {
+        Tree tree = read(id);
+        Map<String, Map<String, String>> subChanges = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                Entry old = tree.entries.get(path);
+                if (change.getValue() != null) {
+                    tree.entries.put(path, new Entry(false, change.getValue()));
+                } else if (old != null && !old.isTree) {
+                    tree.entries.remove(path);
+                }
+            } else {
+                subChanges.computeIfAbsent(path.substring(0, slash), k -> new HashMap<>())
+                    .put(path.substring(slash + 1), change.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> sub : subChanges.entrySet()) {
+            Entry old = tree.entries.get(sub.getKey());
+            boolean wasTree = old != null && old.isTree;
+            Tree subtree = update(wasTree ? old.id : null, sub.getValue(), hasher);
+            if (!subtree.entries.isEmpty()) {
+                tree.entries.put(sub.getKey(), new Entry(true, subtree.save(hasher)));
+            } else if (wasTree) {
+                tree.entries.remove(sub.getKey());
+            }
+        }
+        return tree;
+    }
+
+    /** Returns the listing this tree is stored as. */
+    private byte[] encode() {
+        StringBuilder listing = new StringBuilder();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            listing.append(entry.getValue().isTree ? "tree " : "blob ")
+                .append(entry.getValue().id).append(' ')
+                .append(entry.getKey()).append('\n');
+        }
+        return listing.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Writes this tree to the tree store unless it is already there, and
+     *  returns its id, computed with HASHER. */
+    private String save(Hasher hasher) {
+        byte[] bytes = encode();
+        String id = hasher.hash(bytes);
+        if (ObjectStore.contains(id, ObjectStore.TREE)) {
+            return id;
+        }
+        if (!Repository.TREE_DIR.exists()) {
+            Repository.TREE_DIR.mkdir();
+        }
+        File temp = Utils.join(Repository.TREE_DIR, id + ".tmp");
+        Utils.writeContents(temp, (Object) bytes);
+        if (!temp.renameTo(Utils.join(Repository.TREE_DIR, id))) {
+            temp.delete();
+        }
+        return id;
+    }
+
+    /** Returns the id of the blob or tree at PATH, a '/'-separated path, in
+     *  the snapshot whose root tree is ROOTID, or null if there is none.
+     *  Only the trees along PATH are read. */
+    static String entryId(String rootId, String path) {
+        String[] names = path.split("/");
+        String id = rootId;
+        for (int i = 0; i < names.length; i += 1) {
+            Entry entry = read(id).entries.get(names[i]);
+            if (entry == null || !entry.isTree && i < names.length - 1) {
+                return null;
+            }
+            id = entry.id;
+        }
+        return id;
+    }
+
+    /** Returns the blob ids of those of PATHS, '/'-separated paths, that are
+     *  files in the snapshot whose root tree is ROOTID, by path. Only the
+     *  trees along PATHS are read, each once. */
+    static Map<String, String> blobIds(String rootId, Collection<String> paths) {
+        Map<String, String> ids = new TreeMap<>();
+        blobIds(rootId, "", paths, ids);
+        return ids;
+    }
+
+    private static void blobIds(String id, String prefix, Collection<String> paths,
+                                Map<String, String> ids) {
+        Tree tree = read(id);
+        Map<String, List<String>> subPaths = new TreeMap<>();
+        for (String path : paths) {
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                Entry entry = tree.entries.get(path);
+                if (entry != null && !entry.isTree) {
+                    ids.put(prefix + path, entry.id);
+                }
+            } else {
+                subPaths.computeIfAbsent(path.substring(0, slash), k -> new ArrayList<>())
+                    .add(path.substring(slash + 1));
+            }
+        }
+        for (Map.Entry<String, List<String>> sub : subPaths.entrySet()) {
+            Entry entry = tree.entries.get(sub.getKey());
+            if (entry != null && entry.isTree) {
+                blobIds(entry.id, prefix + sub.getKey() + "/", sub.getValue(), ids);
+            }
+        }
+    }
+
+    /** Returns every file in the snapshot whose root tree is ID, by
+     *  '/'-separated path. */
+    static Map<String, Blob> flatten(String id) {
+        Map<String, Blob> files = new HashMap<>();
+        flatten(id, "", files);
+        return files;
+    }
+
+    private static void flatten(String id, String prefix, Map<String, Blob> files) {
+        for (Map.Entry<String, Entry> entry : read(id).entries.entrySet()) {
+            String path = prefix + entry.getKey();
+            if (entry.getValue().isTree) {
+                flatten(entry.getValue().id, path + "/", files);
+            } else {
+                files.put(path, Blob.stored(entry.getValue().id, path));
+            }
+        }
+    }
+
+    /** Returns the files that differ between the snapshots whose root trees
+     *  are FROM and TO, in order of path. Each path maps to its blob id in
+     *  TO, or to null if TO does not have it. Subtrees with the same id in
+     *  both snapshots are skipped without being read. */
+    static Map<String, String> diff(String from, String to) {
+        Map<String, String> changes = new TreeMap<>();
+        diff(from, to, "", changes);
+        return changes;
+    }
+
+    private static void diff(String from, String to, String prefix, Map<String, String> changes) {
+        if (Objects.equals(from, to)) {
+            return;
+        }
+        Tree fromTree = read(from);
+        Tree toTree = read(to);
+        TreeSet<String> names = new TreeSet<>(fromTree.entries.keySet());
+        names.addAll(toTree.entries.keySet());
+        for (String name : names) {
+            Entry before = fromTree.entries.get(name);
+            Entry after = toTree.entries.get(name);
+            if (Objects.equals(before, after)) {
+                continue;
+            }
+            String path = prefix + name;
+            String subFrom = before != null && before.isTree ? before.id : null;
+            String subTo = after != null && after.isTree ? after.id : null;
+            diff(subFrom, subTo, path + "/", changes);
+            if (after != null && !after.isTree) {
+                changes.put(path, after.id);
+            } else if (before != null && !before.isTree) {
+                changes.put(path, null);
+            }
+        }
+    }
+
+    /** Returns the ids of the subdirectories of this tree. */
+    List<String> subtreeIds() {
+        return entryIds(true);
+    }
+
+    /** Returns the ids of the files directly in this tree. */
+    List<String> blobIds() {
+        return entryIds(false);
+    }
+
+    private List<String> entryIds(boolean trees) {
+        List<String> ids = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.isTree == trees) {
+                ids.add(entry.id);
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,91 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveTask;
+
+/** Scans the working directory. Subdirectories are listed and files are
+ *  hashed in parallel on the common fork/join pool.
+ *
+ *  @author Rong
+ */
+class WorkTree {
+
+    /** Returns the paths of all plain files under the working directory,
+     *  relative to it and separated by '/', in no particular order. The
+     *  .gitlet directory is skipped. */
+    static List<String> files() {
+        return new Walk(Repository.CWD.toPath(), "").invoke();
+    }
+
+    /** Returns the paths of all plain files under DIR, a '/'-separated
+     *  directory path relative to the working directory, in the same form
+     *  as files(). */
+    static List<String> files(String dir) {
+        if (dir.isEmpty()) {
+            return files();
+        }
+        return new Walk(new File(Repository.CWD, dir).toPath(), dir + "/").invoke();
+    }
+
+    /** Returns the ids of the blobs holding the contents of the working
+     *  files at PATHS, each of which must exist. Files whose stat data
+     *  matches INDEX are not read. */
+    static Map<String, String> hashAll(Collection<String> paths, WorkingIndex index) {
+        Map<String, String> ids = new ConcurrentHashMap<>();
+        paths.parallelStream().forEach(path ->
+            ids.put(path, index.hash(path, new File(Repository.CWD, path))));
+        return ids;
+    }
+
+    /** Lists the files under one directory, forking a subtask for each
+     *  subdirectory. */
+    private static class Walk extends RecursiveTask<List<String>> {
+        private static final long serialVersionUID = 4250253008513082027L;
+
+        private final Path dir;
+        /** The path of DIR relative to the working directory, ending in
+         *  '/' unless DIR is the working directory itself. */
+        private final String prefix;
+
+        Walk(Path dir, String prefix) {
+            this.dir = dir;
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<String> files = new ArrayList<>();
+            List<Walk> subdirs = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        if (!(prefix.isEmpty() && name.equals(".gitlet"))) {
+                            Walk walk = new Walk(entry, prefix + name + "/");
+                            walk.fork();
+                            subdirs.add(walk);
+                        }
+                    } else if (Files.isRegularFile(entry)) {
+                        files.add(prefix + name);
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+            for (Walk walk : subdirs) {
+                files.addAll(walk.join());
+            }
+            return files;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/** The last known state of the files in the working directory. For each
+ *  path it remembers the size, modification time and inode the file had
+ *  when it was last hashed, together with the resulting blob id, so a
+ *  file whose stat data has not changed since does not need to be read
+ *  again. Files may be hashed from several threads at once.
+ *
+ *  @author Rong
+ */
+public class WorkingIndex implements Serializable {
+    private static final long serialVersionUID = 2211710600374744750L;
+
+    /** How close to the time it was recorded a file may have been modified
+     *  before its entry can no longer be trusted. A file changed again
+     *  within the timestamp granularity of the file system could keep the
+     *  same size and modification time. */
+    private static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private static class Entry implements Serializable {
+        private static final long serialVersionUID = 259859505987478385L;
+
+        private long size;
+        private long modified;
+        private String inode;
+        private String blobId;
+        /** True if the file was modified so shortly before this entry was
+         *  recorded that a later change might go unnoticed. */
+        private boolean racy;
+    }
+
+    /** Maps paths relative to the working directory to their entries. */
+    private Map<String, Entry> entries;
+
+    private transient volatile boolean changed;
+
+    /** One reusable hasher per thread that hashes files for this index. */
+    private transient ThreadLocal<Hasher> hashers;
+
+    public WorkingIndex() {
+        entries = new ConcurrentHashMap<>();
+        hashers = ThreadLocal.withInitial(Hasher::new);
+    }
+
+    public static WorkingIndex load() {
+        Session session = Session.current();
+        if (session != null) {
+            return session.loadCache(WorkingIndex::read, Repository.WORKING_INDEX);
+        }
+        return read();
+    }
+
+    private static WorkingIndex read() {
+        if (!Repository.WORKING_INDEX.isFile()) {
+            return new WorkingIndex();
+        }
+        WorkingIndex index = Utils.readObject(Repository.WORKING_INDEX, WorkingIndex.class);
+        index.hashers = ThreadLocal.withInitial(Hasher::new);
+        return index;
+    }
+
+    public void save() {
+        if (!changed) {
+            return;
+        }
+        Session session = Session.current();
+        if (session != null && session.defers()) {
+            session.defer(this, this::write, Repository.WORKING_INDEX);
+            return;
+        }
+        write();
+        if (session != null) {
+            session.saved(this, Repository.WORKING_INDEX);
+        }
+    }
+
+    private void write() {
+        Utils.writeObject(Repository.WORKING_INDEX, this);
+        changed = false;
+    }
+
+    /** Returns the id of the blob holding the contents of FILE, found at
+     *  PATH in the working directory. FILE is only read if its stat data
+     *  differs from what was recorded for PATH. */
+    public String hash(String path, File file) {
+        BasicFileAttributes attrs = stat(file);
+        Entry entry = entries.get(path);
+        if (entry != null && !entry.racy && matches(entry, attrs)) {
+            return entry.blobId;
+        }
+        String blobId = hashers.get().hash(file);
+        put(path, attrs, blobId);
+        return blobId;
+    }
+
+    /** Returns the hasher of the calling thread, for hashing files found
+     *  through this index. */
+    Hasher hasher() {
+        return hashers.get();
+    }
+
+    /** Returns the paths this index has entries for. */
+    public List<String> paths() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    /** Records that FILE, found at PATH, currently holds the blob BLOBID,
+     *  typically right after writing it. */
+    public void record(String path, File file, String blobId) {
+        put(path, stat(file), blobId);
+    }
+
+    /** Forgets PATH, typically after deleting it. */
+    public void remove(String path) {
+        if (entries.remove(path) != null) {
+            changed = true;
+        }
+    }
+
+    private void put(String path, BasicFileAttributes attrs, String blobId) {
+        Entry entry = new Entry();
+        entry.size = attrs.size();
+        entry.modified = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        entry.inode = String.valueOf(attrs.fileKey());
+        entry.blobId = blobId;
+        entry.racy = isRacy(attrs.lastModifiedTime());
+        entries.put(path, entry);
+        changed = true;
+    }
+
+    /** Returns true iff a file last modified at MODIFIED may still change
+     *  without its size or modification time showing it. */
+    static boolean isRacy(FileTime modified) {
+        long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        return modified.to(TimeUnit.NANOSECONDS) + RACY_NANOS >= now;
+    }
+
+    private static boolean matches(Entry entry, BasicFileAttributes attrs) {
+        return entry.size == attrs.size()
+            && entry.modified == attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+            && entry.inode.equals(String.valueOf(attrs.fileKey()));
+    }
+
+    private static BasicFileAttributes stat(File file) {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+}